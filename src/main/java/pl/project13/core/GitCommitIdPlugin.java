@@ -21,6 +21,7 @@ import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
 import pl.project13.core.cibuild.BuildServerDataProvider;
 import pl.project13.core.git.GitDescribeConfig;
+import pl.project13.core.git.JGitCacheConfig;
 import pl.project13.core.log.LogInterface;
 import pl.project13.core.util.BuildFileChangeListener;
 import pl.project13.core.util.GitDirLocator;
@@ -293,6 +294,145 @@ public class GitCommitIdPlugin {
      + latest commit that touched this module, not the whole repository.
      */
     boolean isPerModuleVersions();
+
+    /**
+     * The number of threads the JGit implementation compares the files of the work tree with the index with,
+     * when telling whether the working tree is dirty. Only work trees of at least ten thousand files are split
+     * up, in ranges of the index. Has no effect when {@code useNativeGit} is set.
+     *
+     * @return the number of threads, {@code 1} (the default) to scan on a single thread,
+     *         {@code 0} for one thread per available processor
+     */
+    default int getJGitWorkTreeScanThreads() {
+      return 1;
+    }
+
+    /**
+     * Set this to {@code false} to ignore the submodules of the repository when telling whether the working
+     * tree is dirty ({@code git.dirty} and the {@code --dirty} mark of describe), like
+     * {@code git status --ignore-submodules=all}. Otherwise the submodules are checked the way {@code git status}
+     * does, following their {@code ignore} setting. Checking them means opening the repository of every submodule.
+     *
+     * @return {@code true} (the default) to check the submodules, {@code false} to ignore them
+     */
+    default boolean shouldCheckSubmodulesForDirtyState() {
+      return true;
+    }
+
+    /**
+     * Set this to {@code true} to tell whether the working tree is dirty ({@code git.dirty} and the
+     * {@code --dirty} mark of describe) from the file attributes recorded in the index alone: a file counts as
+     * modified as soon as its mode, size or modification time differ, and the content of the files is never read.
+     * This suits builds of fresh clones, which only need to know whether anything was touched.
+     *
+     * <p>The trade-off: a file touched without being changed counts as modified, and a file changed within
+     * the same timestamp as the index was written can go unnoticed ("racily clean" files).
+     * With {@code useNativeGit}, the working tree is compared with {@code git diff-index} instead of
+     * {@code git status}, which does not refresh the index first. Both providers take the {@code --dirty} mark
+     * of describe from the same comparison as {@code git.dirty}, so the mark follows this setting as well.</p>
+     *
+     * @return {@code true} to trust the file attributes, {@code false} (the default) to compare the content
+     *         of the files whose attributes don't tell
+     */
+    default boolean shouldTrustFileStatForDirtyState() {
+      return false;
+    }
+
+    /**
+     * The base directories of all modules of the build that get per-module properties
+     * (see {@link #isPerModuleVersions()}), e.g. all projects of a Maven reactor.
+     *
+     * <p>The JGit implementation then searches the latest commits of all of these modules in a single walk over
+     * the history, when the first module asks for its own. The other modules take their commit from there,
+     * as long as they are built in the same JVM and on the same commit.</p>
+     *
+     * <p>Likewise, when the build tells its id (see {@link #getBuildId()}), the first module to ask for
+     * {@code git.dirty} scans the working tree for all of these modules at once (both implementations), and the
+     * other modules of the build take their dirty state from that scan. Changes made to the working tree while
+     * the modules are built are not seen by the modules after the scan.</p>
+     *
+     * @return the base directories of all modules, empty (the default) to search each module on its own
+     */
+    default Collection<File> getModuleBaseDirs() {
+      return Collections.emptyList();
+    }
+
+    /**
+     * Identifies the build the modules (see {@link #getModuleBaseDirs()}) are built in, e.g. the start time of
+     * the Maven session. It must be the same for all modules of a build, and differ from the one of any other
+     * build in the same JVM, e.g. the next build of a long-living build daemon.
+     *
+     * <p>The modules of the same build share the scan of the working tree for {@code git.dirty}, for as long
+     * as the build takes. Each module only takes its state from the scan of its own build.</p>
+     *
+     * @return the id of the build, {@code null} (the default) to tell the dirty state of each module on its own
+     */
+    default String getBuildId() {
+      return null;
+    }
+
+    /**
+     * Configuration for the pack file cache of the JGit implementation.
+     * Allows to keep the cache warm across the modules of a reactor (and other JGit users
+     * in the same JVM) and to tune its size. Has no effect when {@code useNativeGit} is set.
+     *
+     * @return Configuration for the pack file cache of JGit, {@code null} for JGit's defaults.
+     */
+    default JGitCacheConfig getJGitCacheConfig() {
+      return null;
+    }
+
+    /**
+     * The number of threads the JGit implementation walks the whole history with, when the total commit
+     * count can't be answered from the reachability bitmaps of the repository (see {@code git repack -b}).
+     * Reading the commits from cold pack files then scales with the threads on very large repositories.
+     * Has no effect when {@code useNativeGit} is set.
+     *
+     * @return the number of threads, {@code 1} (the default) to walk on a single thread,
+     *         {@code 0} for one thread per available processor
+     */
+    default int getJGitHistoryWalkThreads() {
+      return 1;
+    }
+
+    /**
+     * When set to {@code true}, the plugin writes the commit-graph of the repository (like
+     * {@code git commit-graph write --reachable --changed-paths}) once all properties are loaded,
+     * or refreshes it when it misses new commits. Later runs then read the history from that file
+     * instead of parsing every commit, which speeds up the commit counts, describe and the per-module
+     * properties on large repositories.
+     *
+     * <p>The file is written under the same lock git uses and moved into place atomically. When another
+     * build holds the lock, writing is skipped. Failing to write it doesn't fail the build.</p>
+     *
+     * @return {@code true} to write the commit-graph, {@code false} (the default) to leave the repository untouched
+     */
+    default boolean shouldWriteCommitGraph() {
+      return false;
+    }
+
+    /**
+     * When set to {@code true}, the plugin keeps an index of the commits it was run on before, with their
+     * total commit count and their closest tag (as long as the tags don't change). Rebuilding a commit,
+     * e.g. after switching branches, then takes the values from the index. The total commit count of
+     * a new commit is derived from the count of an indexed ancestor, so that only the new commits are walked.
+     *
+     * <p>The index is not used for the per-module properties (see {@link #isPerModuleVersions()}).</p>
+     *
+     * @return {@code true} to use the history index, {@code false} (the default) to compute everything on each run
+     */
+    default boolean shouldUseHistoryIndex() {
+      return false;
+    }
+
+    /**
+     * @return the directory to keep the history index in (see {@link #shouldUseHistoryIndex()}),
+     *         {@code null} (the default) for the git directory
+     */
+    @Nullable
+    default File getHistoryIndexDirectory() {
+      return null;
+    }
   }
 
   protected static final Pattern allowedCharactersForEvaluateOnCommit = Pattern.compile("[a-zA-Z0-9\\_\\-\\^\\/\\.]+");
@@ -391,7 +531,10 @@ public class GitCommitIdPlugin {
       @NonNull File dotGitDirectory,
       @NonNull Properties properties) throws GitCommitIdExecutionException {
     GitDataProvider jGitProvider = JGitProvider
-            .on(dotGitDirectory, cb.getLogInterface());
+            .on(dotGitDirectory, cb.getLogInterface())
+            .setJGitCacheConfig(cb.getJGitCacheConfig())
+            .setHistoryWalkThreads(cb.getJGitHistoryWalkThreads())
+            .setWorkTreeScanThreads(cb.getJGitWorkTreeScanThreads());
 
     configureCommonProvider(jGitProvider, cb, dotGitDirectory);
 
@@ -413,10 +556,32 @@ public class GitCommitIdPlugin {
             .setExcludeProperties(cb.getExcludeProperties())
             .setIncludeOnlyProperties(cb.getIncludeOnlyProperties())
             .setOffline(cb.isOffline())
+            .setCheckSubmodulesForDirtyState(cb.shouldCheckSubmodulesForDirtyState())
+            .setTrustFileStatForDirtyState(cb.shouldTrustFileStatForDirtyState())
+            .setWriteCommitGraph(cb.shouldWriteCommitGraph())
+            .setUseHistoryIndex(cb.shouldUseHistoryIndex())
+            .setHistoryIndexDirectory(cb.getHistoryIndexDirectory())
             .setPathFilter(
                     cb.isPerModuleVersions()
-                            ? resolveRelativeModulePath(cb, dotGitDirectory)
-                            : null);
+                            ? resolveRelativeModulePath(cb, dotGitDirectory, cb.getProjectBaseDir())
+                            : null)
+            .setModulePathFilters(
+                    cb.isPerModuleVersions()
+                            ? resolveRelativeModulePaths(cb, dotGitDirectory)
+                            : Collections.emptyList())
+            .setBuildId(cb.getBuildId());
+  }
+
+  @NonNull
+  private static Collection<String> resolveRelativeModulePaths(@NonNull Callback cb, @NonNull File dotGitDirectory) {
+    Set<String> modulePaths = new LinkedHashSet<>();
+    for (File moduleBaseDir : cb.getModuleBaseDirs()) {
+      String modulePath = resolveRelativeModulePath(cb, dotGitDirectory, moduleBaseDir);
+      if (modulePath != null) {
+        modulePaths.add(modulePath);
+      }
+    }
+    return modulePaths;
   }
 
   /**
@@ -425,7 +590,7 @@ public class GitCommitIdPlugin {
    * Returns null if the project directory is not within the repository or if resolution fails.
    */
   @Nullable
-  private static String resolveRelativeModulePath(@NonNull Callback cb, @NonNull File dotGitDirectory) {
+  private static String resolveRelativeModulePath(@NonNull Callback cb, @NonNull File dotGitDirectory, @NonNull File projectBaseDir) {
     try {
       // Determine repository work tree
       // If dotGitDirectory is named ".git", the work tree is its parent
@@ -443,7 +608,7 @@ public class GitCommitIdPlugin {
       }
 
       Path repoRoot = repoWorkTree.toPath().toAbsolutePath().normalize();
-      Path moduleDir = cb.getProjectBaseDir().toPath().toAbsolutePath().normalize();
+      Path moduleDir = projectBaseDir.toPath().toAbsolutePath().normalize();
 
       if (!moduleDir.startsWith(repoRoot)) {
         cb.getLogInterface()
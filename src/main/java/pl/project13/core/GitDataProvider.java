@@ -18,12 +18,14 @@
 package pl.project13.core;
 
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 import pl.project13.core.git.GitDescribeConfig;
 import pl.project13.core.cibuild.BuildServerDataProvider;
 import pl.project13.core.cibuild.UnknownBuildServerData;
 import pl.project13.core.log.LogInterface;
 import pl.project13.core.util.PropertyManager;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -122,6 +124,54 @@ public abstract class GitDataProvider implements GitProvider {
    */
   protected String pathFilter;
 
+  /**
+   * The path filters of all modules of the build (see {@link #pathFilter}), whose history is searched
+   * together with the one of this module.
+   */
+  protected Collection<String> modulePathFilters = Collections.emptyList();
+
+  /**
+   * Identifies the build the modules (see {@link #modulePathFilters}) run in, {@code null} if not known.
+   */
+  protected String buildId;
+
+  /**
+   * When set to {@code false}, the submodules are ignored when checking if the working tree is dirty.
+   */
+  protected boolean checkSubmodulesForDirtyState = true;
+
+  /**
+   * When set to {@code true}, the files of the working tree are compared with the index by their attributes
+   * (mode, size, modification time) only when checking if the working tree is dirty, their content is never read.
+   */
+  protected boolean trustFileStatForDirtyState = false;
+
+  /**
+   * When set to {@code true}, the commit-graph of the repository gets written (or refreshed)
+   * once all properties are loaded, so that the following runs can read the history from it.
+   */
+  protected boolean writeCommitGraph;
+
+  /**
+   * When set to {@code true}, the total commit count and the closest tag are kept in a {@link HistoryIndex}.
+   */
+  protected boolean useHistoryIndex;
+
+  /**
+   * The directory of the {@link HistoryIndex}, {@code null} for the git directory.
+   */
+  protected File historyIndexDirectory;
+
+  /**
+   * The {@link HistoryIndex} of the current run, {@code null} if none is used.
+   */
+  protected HistoryIndex historyIndex;
+
+  /**
+   * Whether the working tree is dirty, checked once per run for both {@code git.dirty} and describe.
+   */
+  private final SupplierEx<Boolean> dirtyState = memoize(this::isDirty);
+
   /**
    * Constructor to encapsulates all references required to dertermine all git-data.
    * @param log logging provider which will be used to log events
@@ -259,6 +309,103 @@ public abstract class GitDataProvider implements GitProvider {
     return this;
   }
 
+  /**
+   * Sets the path filters of all modules of the build, which get searched together with the path filter
+   * of this module (see {@link #setPathFilter(String)}) when the implementation supports doing so.
+   *
+   * @param modulePathFilters paths relative to repository root using forward slashes (git-style)
+   * @return The {@code GitProvider} with the corresponding path filters set.
+   */
+  public GitDataProvider setModulePathFilters(@NonNull Collection<String> modulePathFilters) {
+    this.modulePathFilters = modulePathFilters;
+    return this;
+  }
+
+  /**
+   * Sets the id of the build the modules run in. The modules of the same build share the scan of the
+   * working tree for their dirty state (see {@link #setModulePathFilters(Collection)}).
+   *
+   * @param buildId identifies the build, {@code null} to check the dirty state of each module on its own
+   * @return The {@code GitProvider} with the corresponding build id set.
+   */
+  public GitDataProvider setBuildId(@Nullable String buildId) {
+    this.buildId = buildId;
+    return this;
+  }
+
+  /**
+   * Sets whether the submodules are checked when telling if the working tree is dirty.
+   *
+   * @param checkSubmodulesForDirtyState {@code false} to ignore the submodules, like {@code --ignore-submodules=all}
+   * @return The {@code GitProvider} with the corresponding option set.
+   */
+  public GitDataProvider setCheckSubmodulesForDirtyState(boolean checkSubmodulesForDirtyState) {
+    this.checkSubmodulesForDirtyState = checkSubmodulesForDirtyState;
+    return this;
+  }
+
+  /**
+   * Sets whether the files of the working tree are compared with the index by their attributes only
+   * when telling if the working tree is dirty.
+   *
+   * @param trustFileStatForDirtyState {@code true} to never read the content of the files
+   * @return The {@code GitProvider} with the corresponding option set.
+   */
+  public GitDataProvider setTrustFileStatForDirtyState(boolean trustFileStatForDirtyState) {
+    this.trustFileStatForDirtyState = trustFileStatForDirtyState;
+    return this;
+  }
+
+  /**
+   * Enables writing the commit-graph of the repository after all properties were loaded.
+   *
+   * @param writeCommitGraph {@code true} to write (or refresh) the commit-graph
+   * @return The {@code GitProvider} with the corresponding option set.
+   */
+  public GitDataProvider setWriteCommitGraph(boolean writeCommitGraph) {
+    this.writeCommitGraph = writeCommitGraph;
+    return this;
+  }
+
+  /**
+   * Enables the {@link HistoryIndex}, which keeps the total commit count and the closest tag of
+   * the commits built before.
+   *
+   * @param useHistoryIndex {@code true} to use the history index
+   * @return The {@code GitProvider} with the corresponding option set.
+   */
+  public GitDataProvider setUseHistoryIndex(boolean useHistoryIndex) {
+    this.useHistoryIndex = useHistoryIndex;
+    return this;
+  }
+
+  /**
+   * Sets the directory of the {@link HistoryIndex}.
+   *
+   * @param historyIndexDirectory the directory to keep the index in, {@code null} for the git directory
+   * @return The {@code GitProvider} with the corresponding option set.
+   */
+  public GitDataProvider setHistoryIndexDirectory(File historyIndexDirectory) {
+    this.historyIndexDirectory = historyIndexDirectory;
+    return this;
+  }
+
+  /**
+   * @return {@code true} if the history walks only follow the first parent of merge commits,
+   *         see {@link GitDescribeConfig#isFirstParent()}
+   */
+  protected boolean isFirstParent() {
+    return gitDescribe != null && gitDescribe.isFirstParent();
+  }
+
+  /**
+   * @return {@code true} if the working tree is dirty, see {@link #isDirty()}, which is only asked once per run
+   * @throws GitCommitIdExecutionException if the working tree could not be checked
+   */
+  protected boolean getDirtyState() throws GitCommitIdExecutionException {
+    return dirtyState.get();
+  }
+
   /**
    * Main function that will attempt to load the desired properties from the git repository.
    *
@@ -271,6 +418,14 @@ public abstract class GitDataProvider implements GitProvider {
   protected void loadGitData(@NonNull String evaluateOnCommit, @NonNull Map<String,String> env, @NonNull Properties properties) throws GitCommitIdExecutionException {
     this.evaluateOnCommit = evaluateOnCommit;
     init();
+    if (useHistoryIndex) {
+      File directory = historyIndexDirectory != null ? historyIndexDirectory : getGitDirectory();
+      // a provider that can't tell its git directory goes without an index, unless one is configured;
+      // the counts of a shallow clone (or of replaced commits) would no longer hold once the history changes
+      if (directory != null && !mayRewriteHistory()) {
+        historyIndex = HistoryIndex.load(directory, isFirstParent(), log);
+      }
+    }
     // git.user.name
     maybePut(properties, GitCommitPropertyConstant.BUILD_AUTHOR_NAME, this::getBuildAuthorName);
     // git.user.email
@@ -279,6 +434,7 @@ public abstract class GitDataProvider implements GitProvider {
     try {
       prepareGitToExtractMoreDetailedRepoInformation();
       validateAbbrevLength(abbrevLength);
+      validateDescribeCandidates(gitDescribe);
 
       // git.branch
       maybePut(properties, GitCommitPropertyConstant.BRANCH, () -> determineBranchName(env));
@@ -302,7 +458,7 @@ public abstract class GitDataProvider implements GitProvider {
       // git.commit.id.abbrev
       maybePut(properties, GitCommitPropertyConstant.COMMIT_ID_ABBREV, this::getAbbrevCommitId);
       // git.dirty
-      maybePut(properties, GitCommitPropertyConstant.DIRTY, () -> Boolean.toString(isDirty()));
+      maybePut(properties, GitCommitPropertyConstant.DIRTY, () -> Boolean.toString(getDirtyState()));
       // git.commit.user.name
       maybePut(properties, GitCommitPropertyConstant.COMMIT_AUTHOR_NAME, this::getCommitAuthorName);
       // git.commit.user.email
@@ -332,7 +488,14 @@ public abstract class GitDataProvider implements GitProvider {
       SupplierEx<AheadBehind> aheadBehindSupplier = memoize(this::getAheadBehind);
       maybePut(properties, GitCommitPropertyConstant.LOCAL_BRANCH_AHEAD, () -> aheadBehindSupplier.get().ahead());
       maybePut(properties, GitCommitPropertyConstant.LOCAL_BRANCH_BEHIND, () -> aheadBehindSupplier.get().behind());
+
+      if (writeCommitGraph) {
+        writeCommitGraph();
+      }
     } finally {
+      if (historyIndex != null) {
+        historyIndex.save();
+      }
       finalCleanUp();
     }
   }
@@ -374,6 +537,21 @@ public abstract class GitDataProvider implements GitProvider {
     }
   }
 
+  /**
+   * Checks the <pre>--candidates</pre> of describe once for both providers, which would otherwise
+   * treat values out of range differently.
+   *
+   * @param gitDescribe the describe configuration, may be {@code null}
+   * @throws GitCommitIdExecutionException if the number of candidates is out of range
+   */
+  void validateDescribeCandidates(@Nullable GitDescribeConfig gitDescribe) throws GitCommitIdExecutionException {
+    if (gitDescribe != null && (gitDescribe.getCandidates() < 0 || gitDescribe.getCandidates() > GitDescribeConfig.MAX_CANDIDATES)) {
+      throw new GitCommitIdExecutionException(String.format("The number of describe candidates must be between 0 and %s, inclusive! Was [%s]. ",
+          GitDescribeConfig.MAX_CANDIDATES, gitDescribe.getCandidates()) +
+          "Please fix your configuration (the <candidates/> element).");
+    }
+  }
+
   /**
    * If running within Jenkins/Hudson, honor the branch name passed via GIT_BRANCH env var.
    * This is necessary because Jenkins/Hudson always invoke build in a detached head state.
@@ -17,6 +17,8 @@
 
 package pl.project13.core;
 
+import java.io.File;
+
 import pl.project13.core.AheadBehind;
 import pl.project13.core.GitCommitIdExecutionException;
 
@@ -65,6 +67,32 @@ public interface GitProvider {
 
   String getTotalCommitCount() throws GitCommitIdExecutionException;
 
+  /**
+   * Writes (or refreshes) the commit-graph of the repository, which speeds up later history walks.
+   * Providers that can't write one leave the repository as it is.
+   *
+   * @throws GitCommitIdExecutionException if the commit-graph could not be written
+   */
+  default void writeCommitGraph() throws GitCommitIdExecutionException {
+  }
+
+  /**
+   * @return the git directory of the repository, {@code null} if the provider can't tell
+   * @throws GitCommitIdExecutionException if the git directory could not be determined
+   */
+  default File getGitDirectory() throws GitCommitIdExecutionException {
+    return null;
+  }
+
+  /**
+   * @return {@code true} if commits might have other parents than the ones stored with them, like in a shallow
+   *         clone or with replace refs or grafts, so that what is known about a commit can change later on
+   * @throws GitCommitIdExecutionException if the repository could not be checked
+   */
+  default boolean mayRewriteHistory() throws GitCommitIdExecutionException {
+    return false;
+  }
+
   void finalCleanUp() throws GitCommitIdExecutionException;
   
   AheadBehind getAheadBehind() throws GitCommitIdExecutionException;
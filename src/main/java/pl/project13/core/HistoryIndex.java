@@ -0,0 +1,284 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core;
+
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import pl.project13.core.git.GitDescribeConfig;
+import pl.project13.core.log.LogInterface;
+import pl.project13.core.util.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Remembers the history metadata of the commits built before, which never changes for a given commit id:
+ * the total commit count, and the closest tag with its distance as long as the tags stay the same.
+ *
+ * <p>The closest tags are stored under a key of the tags and describe options they were searched with
+ * (see {@link #tagsKey(Collection, GitDescribeConfig)}). Once a tag gets added, moved or deleted, the key
+ * changes, and the closest tags found with the previous key are dropped.</p>
+ *
+ * <p>The total commit count of a new commit is derived from an indexed ancestor along the first parents
+ * (see {@link #findIndexedCommit(List)}): its count plus the commits that are reachable from the new commit
+ * only. So only the commits made since the last build get walked. Only the counts of the commits closest to
+ * the tips are kept, see {@link #MAX_INDEXED_COUNTS}.</p>
+ *
+ * <p>The index is a properties file, written to a temporary file and moved into place once the run is done.
+ * Concurrent builds don't corrupt it, but may lose each other's entries, which only get computed again.
+ * Writing it into the git directory keeps the repositories of the
+ * {@link pl.project13.core.jgit.JGitRepositoryCache} open, their identity doesn't change with writes.</p>
+ */
+public class HistoryIndex {
+
+  /**
+   * The name of the index file, within the git directory or the configured directory.
+   */
+  public static final String FILE_NAME = "git-commit-id-history.properties";
+
+  /**
+   * How many commits along the first parents are searched for an indexed commit to count from.
+   */
+  public static final int MAX_ANCESTOR_DISTANCE = 1000;
+
+  /**
+   * How many total commit counts are kept (of each kind). Beyond that, the counts of the commits
+   * furthest behind the tips (those with the lowest counts) are dropped.
+   */
+  public static final int MAX_INDEXED_COUNTS = 100;
+
+  private static final String TOTAL_COMMIT_COUNT_PREFIX = "count.";
+  private static final String FIRST_PARENT_COUNT_PREFIX = "firstParentCount.";
+  private static final String CLOSEST_TAG_PREFIX = "closestTag.";
+
+  @NonNull
+  private final File file;
+  @NonNull
+  private final Properties entries;
+  @NonNull
+  private final LogInterface log;
+  @NonNull
+  private final String countPrefix;
+  private boolean modified;
+
+  private HistoryIndex(@NonNull File file, @NonNull Properties entries, boolean firstParent, @NonNull LogInterface log) {
+    this.file = file;
+    this.entries = entries;
+    this.log = log;
+    this.countPrefix = firstParent ? FIRST_PARENT_COUNT_PREFIX : TOTAL_COMMIT_COUNT_PREFIX;
+  }
+
+  /**
+   * @param directory the directory holding the index file
+   * @param firstParent {@code true} if the total commit counts only count the first parents of merge commits,
+   *                    which are kept apart from the full counts
+   * @param log logger bridge to direct logs to
+   * @return the index stored in the directory, an empty one if there is none yet (or it can't be read)
+   */
+  @NonNull
+  public static HistoryIndex load(@NonNull File directory, boolean firstParent, @NonNull LogInterface log) {
+    File file = new File(directory, FILE_NAME);
+    Properties entries = new Properties();
+    if (file.isFile()) {
+      try (InputStream in = Files.newInputStream(file.toPath())) {
+        entries.load(in);
+      } catch (IOException | IllegalArgumentException e) {
+        log.warn(String.format("Ignoring the unreadable history index [%s]: %s", file, e.getMessage()));
+        entries.clear();
+      }
+    }
+    return new HistoryIndex(file, entries, firstParent, log);
+  }
+
+  /**
+   * @param commitId the full id of a commit
+   * @return the indexed total commit count of the commit, {@code null} if it is not indexed
+   */
+  @Nullable
+  public Long getTotalCommitCount(@NonNull String commitId) {
+    String count = entries.getProperty(countPrefix + commitId);
+    try {
+      return count != null ? Long.valueOf(count) : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param commitId the full id of a commit
+   * @param count the number of commits reachable from the commit, including the commit itself
+   */
+  public void putTotalCommitCount(@NonNull String commitId, long count) {
+    put(countPrefix + commitId, String.valueOf(count));
+
+    List<String> countKeys = new ArrayList<>();
+    for (String key : entries.stringPropertyNames()) {
+      if (key.startsWith(countPrefix)) {
+        countKeys.add(key);
+      }
+    }
+    if (countKeys.size() <= MAX_INDEXED_COUNTS) {
+      return;
+    }
+    // a new commit is counted from an indexed commit close to it, which is one close to the tips
+    countKeys.sort(Comparator.comparingLong(this::countOf).reversed());
+    for (String key : countKeys.subList(MAX_INDEXED_COUNTS, countKeys.size())) {
+      entries.remove(key);
+    }
+  }
+
+  private long countOf(@NonNull String key) {
+    try {
+      return Long.parseLong(entries.getProperty(key));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @param firstParents the full ids of a commit and its first parents, the commit first
+   * @return the first of the commits whose total commit count is indexed, {@code null} if none is
+   */
+  @Nullable
+  public String findIndexedCommit(@NonNull List<String> firstParents) {
+    for (String commitId : firstParents) {
+      if (getTotalCommitCount(commitId) != null) {
+        return commitId;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param tagsKey the key of the tags and describe options, see {@link #tagsKey(Collection, GitDescribeConfig)}
+   * @param commitId the full id of a commit
+   * @return the name of the closest tag and the number of commits since then (both empty when no tag could
+   *         be found), {@code null} if the commit is not indexed for these tags
+   */
+  @Nullable
+  public Pair<String, String> getClosestTag(@NonNull String tagsKey, @NonNull String commitId) {
+    String value = entries.getProperty(CLOSEST_TAG_PREFIX + tagsKey + "." + commitId);
+    if (value == null) {
+      return null;
+    }
+    // <distance> <name>, ref names contain no spaces
+    int separator = value.indexOf(' ');
+    if (separator < 0) {
+      return Pair.of("", "");
+    }
+    return Pair.of(value.substring(separator + 1), value.substring(0, separator));
+  }
+
+  /**
+   * Indexes the closest tag of a commit, and drops the closest tags found with other tags.
+   *
+   * @param tagsKey the key of the tags and describe options, see {@link #tagsKey(Collection, GitDescribeConfig)}
+   * @param commitId the full id of a commit
+   * @param name the name of the closest tag, empty when no tag could be found
+   * @param distance the number of commits since the closest tag, empty when no tag could be found
+   */
+  public void putClosestTag(@NonNull String tagsKey, @NonNull String commitId, @NonNull String name, @NonNull String distance) {
+    String prefix = CLOSEST_TAG_PREFIX + tagsKey + ".";
+    entries.stringPropertyNames().stream()
+        .filter(key -> key.startsWith(CLOSEST_TAG_PREFIX) && !key.startsWith(prefix))
+        .forEach(key -> {
+          entries.remove(key);
+          modified = true;
+        });
+    put(prefix + commitId, name.isEmpty() ? "" : distance + " " + name);
+  }
+
+  private void put(@NonNull String key, @NonNull String value) {
+    Object previous = entries.setProperty(key, value);
+    if (!value.equals(previous)) {
+      modified = true;
+    }
+  }
+
+  /**
+   * Writes the index, if anything got added since it was loaded. Failing to do so is only logged.
+   */
+  public void save() {
+    if (!modified) {
+      return;
+    }
+    Path target = file.toPath();
+    try {
+      Files.createDirectories(target.getParent());
+      Path temp = Files.createTempFile(target.getParent(), FILE_NAME, ".tmp");
+      try {
+        try (OutputStream out = Files.newOutputStream(temp)) {
+          entries.store(out, "git-commit-id history index");
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+      modified = false;
+    } catch (IOException e) {
+      log.warn(String.format("Failed to write the history index [%s]: %s", file, e.getMessage()));
+    }
+  }
+
+  /**
+   * @param tagRefs the tags of the repository, as {@code <object id> <ref name>} lines
+   * @param gitDescribe the describe options the closest tags are searched with, may be {@code null}
+   * @return a key that changes whenever a tag or an option that influences the closest tag changes
+   */
+  @NonNull
+  public static String tagsKey(@NonNull Collection<String> tagRefs, @Nullable GitDescribeConfig gitDescribe) {
+    List<String> lines = new ArrayList<>(tagRefs);
+    Collections.sort(lines);
+    if (gitDescribe != null) {
+      lines.add("tags=" + gitDescribe.getTags());
+      lines.add("match=" + gitDescribe.getMatch());
+      lines.add("candidates=" + gitDescribe.getCandidates());
+      lines.add("maxSearchDepth=" + gitDescribe.getMaxSearchDepth());
+      lines.add("clockSkewSlop=" + gitDescribe.getClockSkewSlop());
+      lines.add("firstParent=" + gitDescribe.isFirstParent());
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      for (String line : lines) {
+        digest.update(line.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+      }
+      StringBuilder key = new StringBuilder();
+      for (byte b : digest.digest()) {
+        key.append(String.format("%02x", b));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    }
+  }
+}
@@ -24,15 +24,24 @@ import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.RevWalkUtils;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.util.FS;
 
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
+import pl.project13.core.git.JGitCacheConfig;
+import pl.project13.core.jgit.CommitGraphMaintenance;
 import pl.project13.core.jgit.DescribeResult;
+import pl.project13.core.jgit.DirtyCheck;
 import pl.project13.core.jgit.JGitCommon;
 import pl.project13.core.jgit.DescribeCommand;
+import pl.project13.core.jgit.JGitRepositoryCache;
+import pl.project13.core.jgit.JGitWindowCache;
+import pl.project13.core.jgit.ParallelCommitWalk;
+import pl.project13.core.jgit.ReachabilityBitmaps;
+import pl.project13.core.jgit.RefSnapshot;
+import pl.project13.core.jgit.RevWalkContext;
 import pl.project13.core.log.LogInterface;
+import pl.project13.core.util.Pair;
 
 import java.io.File;
 import java.io.IOException;
@@ -40,16 +49,17 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import org.eclipse.jgit.storage.file.WindowCacheConfig;
-
 public class JGitProvider extends GitDataProvider {
 
   private File dotGitDirectory;
   private Repository git;
-  private ObjectReader objectReader;
-  private RevWalk revWalk;
+  private RevWalkContext walkContext;
   private RevCommit evalCommit;
   private JGitCommon jGitCommon;
+  private boolean repositoryFromCache;
+  private JGitCacheConfig jGitCacheConfig;
+  private int historyWalkThreads = 1;
+  private int workTreeScanThreads = 1;
 
   @NonNull
   public static JGitProvider on(@NonNull File dotGitDirectory, @NonNull LogInterface log) {
@@ -63,10 +73,51 @@ public class JGitProvider extends GitDataProvider {
     this.jGitCommon = new JGitCommon(log);
   }
 
+  /**
+   * Sets the {@link JGitCacheConfig} that controls JGit's pack file cache.
+   * @param jGitCacheConfig The {@link JGitCacheConfig}, {@code null} for JGit's defaults
+   * @return The {@code JGitProvider} with the corresponding {@link JGitCacheConfig}.
+   */
+  public JGitProvider setJGitCacheConfig(JGitCacheConfig jGitCacheConfig) {
+    this.jGitCacheConfig = jGitCacheConfig;
+    return this;
+  }
+
+  /**
+   * Sets the number of threads to walk the whole history with, when the commit count can't be
+   * answered from the reachability bitmaps.
+   * @param historyWalkThreads The number of threads, {@code 1} to walk on the calling thread,
+   *                           {@code 0} for one thread per available processor
+   * @return The {@code JGitProvider} with the corresponding number of threads.
+   */
+  public JGitProvider setHistoryWalkThreads(int historyWalkThreads) {
+    this.historyWalkThreads = historyWalkThreads > 0 ? historyWalkThreads : Runtime.getRuntime().availableProcessors();
+    return this;
+  }
+
+  /**
+   * Sets the number of threads to compare the files of large work trees with the index with,
+   * when checking if the work tree is dirty.
+   * @param workTreeScanThreads The number of threads, {@code 1} to scan on the calling thread,
+   *                            {@code 0} for one thread per available processor
+   * @return The {@code JGitProvider} with the corresponding number of threads.
+   */
+  public JGitProvider setWorkTreeScanThreads(int workTreeScanThreads) {
+    this.workTreeScanThreads = workTreeScanThreads > 0 ? workTreeScanThreads : Runtime.getRuntime().availableProcessors();
+    return this;
+  }
+
   @Override
   public void init() throws GitCommitIdExecutionException {
-    git = getGitRepository();
-    objectReader = git.newObjectReader();
+    JGitWindowCache.configure(jGitCacheConfig);
+    if (git == null) {
+      git = getGitRepository();
+      repositoryFromCache = true;
+    }
+    walkContext = new RevWalkContext(git);
+    if (gitDescribe != null) {
+      walkContext.setClockSkewSlop(gitDescribe.getClockSkewSlop());
+    }
   }
 
   @Override
@@ -102,7 +153,6 @@ public class JGitProvider extends GitDataProvider {
                 "Could not get " + evaluateOnCommit + " Ref, are you sure you have set the dotGitDirectory " +
                         "property of this plugin to a valid path (currently set to " + dotGitDirectory + ")?");
       }
-      revWalk = new RevWalk(git);
       ObjectId headObjectId;
       if (evaluateOnCommitReference != null) {
         headObjectId = evaluateOnCommitReference.getObjectId();
@@ -115,8 +165,7 @@ public class JGitProvider extends GitDataProvider {
                 "Could not get " + evaluateOnCommit + " Ref, are you sure you have some " +
                         "commits in the dotGitDirectory (currently set to " + dotGitDirectory + ")?");
       }
-      evalCommit = revWalk.parseCommit(headObjectId);
-      revWalk.markStart(evalCommit);
+      evalCommit = walkContext.walk().parseCommit(headObjectId);
     } catch (GitCommitIdExecutionException e) {
       throw e;
     } catch (Exception e) {
@@ -136,19 +185,14 @@ public class JGitProvider extends GitDataProvider {
         return null;
       }
 
-      try (Git git = Git.wrap(this.git)) {
-        Iterable<RevCommit> commits = git.log()
-            .add(start)
-            .addPath(path)
-            .setMaxCount(1)
-            .call();
-        
-        Iterator<RevCommit> it = commits.iterator();
-        if (it.hasNext()) {
-          return it.next().getName();
-        }
+      RevCommit latestCommit;
+      if (modulePathFilters.contains(path)) {
+        // finds the latest commits of the other modules along the way, which take them from there
+        latestCommit = jGitCommon.findLatestCommitsForPaths(walkContext, start, modulePathFilters, isFirstParent()).get(path);
+      } else {
+        latestCommit = jGitCommon.findLatestCommitForPath(walkContext, start, path, isFirstParent());
       }
-      return null;
+      return latestCommit != null ? latestCommit.getName() : null;
     } catch (Exception e) {
       throw new GitCommitIdExecutionException("Failed to find latest commit for path: " + path, e);
     }
@@ -175,9 +219,8 @@ public class JGitProvider extends GitDataProvider {
     try {
       String commitId = getCommitId();
 
-      boolean evaluateOnCommitPointsToTag = git.getRefDatabase().getRefsByPrefix(Constants.R_TAGS)
-              .stream()
-              .anyMatch(ref -> Repository.shortenRefName(ref.getName()).equalsIgnoreCase(evaluateOnCommit));
+      RefSnapshot refSnapshot = walkContext.getRefSnapshot();
+      boolean evaluateOnCommitPointsToTag = refSnapshot.hasTagIgnoreCase(evaluateOnCommit);
 
       if (evaluateOnCommitPointsToTag) {
         // 'git branch --points-at' only works for <sha-objects> and <branch> names
@@ -185,13 +228,7 @@ public class JGitProvider extends GitDataProvider {
         return commitId;
       }
 
-      List<String> branchesForCommit = git.getRefDatabase().getRefsByPrefix(Constants.R_HEADS)
-              .stream()
-              .filter(ref -> commitId.equals(ref.getObjectId().name()))
-              .map(ref -> Repository.shortenRefName(ref.getName()))
-              .distinct()
-              .sorted()
-              .collect(Collectors.toList());
+      List<String> branchesForCommit = refSnapshot.getBranchesPointingAt(evalCommit);
 
       String branch = branchesForCommit.stream()
               .collect(Collectors.joining(","));
@@ -213,9 +250,13 @@ public class JGitProvider extends GitDataProvider {
   @Override
   public String getGitDescribe() throws GitCommitIdExecutionException {
     try {
-      Repository repo = getGitRepository();
       DescribeResult describeResult = DescribeCommand
-          .on(evaluateOnCommit, repo, log, pathFilter)
+          .on(evaluateOnCommit, git, log, pathFilter)
+          .walkContext(walkContext)
+          .checkSubmodules(checkSubmodulesForDirtyState)
+          .workTreeScanThreads(workTreeScanThreads)
+          .trustFileStat(trustFileStatForDirtyState)
+          .dirtyState(this::getDirtyState)
           .apply(super.gitDescribe)
           .call();
 
@@ -232,13 +273,46 @@ public class JGitProvider extends GitDataProvider {
 
   @Override
   public String getAbbrevCommitId() throws GitCommitIdExecutionException {
-    return getAbbrevCommitId(objectReader, evalCommit, abbrevLength);
+    return getAbbrevCommitId(walkContext.getObjectReader(), evalCommit, abbrevLength);
   }
 
   @Override
   public boolean isDirty() throws GitCommitIdExecutionException {
+    if (pathFilter != null && buildId != null && modulePathFilters.contains(pathFilter)) {
+      // finds the dirty state of the other modules along the way, which take it from there
+      return ModuleDirtyStates.isDirty(
+          List.of(git.getDirectory(), "jgit", checkSubmodulesForDirtyState, trustFileStatForDirtyState),
+          buildId, getHeadForDirtyStates(), pathFilter, modulePathFilters, this::findDirtyModules);
+    }
     try {
-      return JGitCommon.isRepositoryInDirtyState(git, pathFilter);
+      return JGitCommon.isRepositoryInDirtyState(git, pathFilter, dirtyCheckOptions());
+    } catch (GitAPIException e) {
+      throw new GitCommitIdExecutionException("Failed to get git status: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * @return the commit {@code HEAD} points to, a new object (equal to no other) if there is none yet
+   */
+  private Object getHeadForDirtyStates() throws GitCommitIdExecutionException {
+    try {
+      ObjectId head = git.resolve(Constants.HEAD);
+      return head != null ? head.name() : new Object();
+    } catch (IOException e) {
+      throw new GitCommitIdExecutionException("Failed to get git status: " + e.getMessage(), e);
+    }
+  }
+
+  private DirtyCheck.@NonNull Options dirtyCheckOptions() {
+    return new DirtyCheck.Options()
+        .checkSubmodules(checkSubmodulesForDirtyState)
+        .threads(workTreeScanThreads)
+        .trustFileStat(trustFileStatForDirtyState);
+  }
+
+  private Set<String> findDirtyModules(@NonNull Collection<String> modules) throws GitCommitIdExecutionException {
+    try {
+      return JGitCommon.findDirtyPaths(git, modules, dirtyCheckOptions());
     } catch (GitAPIException e) {
       throw new GitCommitIdExecutionException("Failed to get git status: " + e.getMessage(), e);
     }
@@ -295,9 +369,8 @@ public class JGitProvider extends GitDataProvider {
   @Override
   public String getTags() throws GitCommitIdExecutionException {
     try {
-      Repository repo = getGitRepository();
       ObjectId headId = evalCommit.toObjectId();
-      Collection<String> tags = jGitCommon.getTags(repo, headId);
+      Collection<String> tags = jGitCommon.getTags(walkContext, headId);
       return String.join(",", tags);
     } catch (GitAPIException e) {
       log.error(String.format("Unable to extract tags from commit: %s", evalCommit.getName()), e);
@@ -308,9 +381,8 @@ public class JGitProvider extends GitDataProvider {
   @Override
   public String getTag() throws GitCommitIdExecutionException {
     try {
-      Repository repo = getGitRepository();
       ObjectId headId = evalCommit.toObjectId();
-      Collection<String> tags = jGitCommon.getTag(repo, headId);
+      Collection<String> tags = jGitCommon.getTag(walkContext, headId);
       return String.join(",", tags);
     } catch (GitAPIException e) {
       log.error(String.format("Unable to extract tag from commit: %s", evalCommit.getName()), e);
@@ -326,17 +398,18 @@ public class JGitProvider extends GitDataProvider {
         String latestCommitForPath = findLatestCommitForPath(pathFilter);
         if (latestCommitForPath != null && !latestCommitForPath.isEmpty()) {
           // Use jGitCommon.getClosestTagName on the latest commit that touched this path
-          Repository repo = getGitRepository();
-          return jGitCommon.getClosestTagName(latestCommitForPath, repo, gitDescribe);
+          return jGitCommon.getClosestTagName(latestCommitForPath, walkContext, gitDescribe);
         }
       } catch (Exception e) {
         log.warn("Failed to find tags for path: " + pathFilter + ", falling back to normal behavior");
       }
     }
     // Fallback to normal behavior
-    Repository repo = getGitRepository();
     try {
-      return jGitCommon.getClosestTagName(evaluateOnCommit, repo, gitDescribe);
+      if (historyIndex != null) {
+        return getIndexedClosestTag().first;
+      }
+      return jGitCommon.getClosestTagName(evaluateOnCommit, walkContext, gitDescribe);
     } catch (Throwable t) {
       // could not find any tags to describe
     }
@@ -350,54 +423,153 @@ public class JGitProvider extends GitDataProvider {
         // When path filter is present, we need to find the latest commit for that path first
         String latestCommitForPath = findLatestCommitForPath(pathFilter);
         if (latestCommitForPath != null && !latestCommitForPath.isEmpty()) {
-          Repository repo = getGitRepository();
-          return jGitCommon.getClosestTagCommitCount(latestCommitForPath, repo, gitDescribe);
+          return jGitCommon.getClosestTagCommitCount(latestCommitForPath, walkContext, gitDescribe);
         }
       } catch (Exception e) {
         log.warn("Failed to find latest commit for path: " + pathFilter + ", falling back to normal behavior");
       }
     }
     // Fallback to normal behavior
-    Repository repo = getGitRepository();
     try {
-      return jGitCommon.getClosestTagCommitCount(evaluateOnCommit, repo, gitDescribe);
+      if (historyIndex != null) {
+        return getIndexedClosestTag().second;
+      }
+      return jGitCommon.getClosestTagCommitCount(evaluateOnCommit, walkContext, gitDescribe);
     } catch (Throwable t) {
       // could not find any tags to describe
     }
     return "";
   }
 
+  /**
+   * @return the name of the closest tag and the number of commits since then, from the history index if
+   *         the commit was built with the same tags before
+   */
+  private Pair<String, String> getIndexedClosestTag() throws IOException {
+    List<String> tagRefs = walkContext.getRefSnapshot().getTags().stream()
+        .map(tag -> tag.getObjectId().name() + " " + tag.getName())
+        .collect(Collectors.toList());
+    String tagsKey = HistoryIndex.tagsKey(tagRefs, gitDescribe);
+    Pair<String, String> closestTag = historyIndex.getClosestTag(tagsKey, evalCommit.name());
+    if (closestTag == null) {
+      closestTag = Pair.of(
+          jGitCommon.getClosestTagName(evaluateOnCommit, walkContext, gitDescribe),
+          jGitCommon.getClosestTagCommitCount(evaluateOnCommit, walkContext, gitDescribe));
+      historyIndex.putClosestTag(tagsKey, evalCommit.name(), closestTag.first, closestTag.second);
+    }
+    return closestTag;
+  }
+
   @Override
   public String getTotalCommitCount() throws GitCommitIdExecutionException {
     try {
       if (pathFilter != null && !pathFilter.isEmpty()) {
-        long count = 0;
-        for (RevCommit ignored : Git.wrap(git).log().add(evalCommit).addPath(pathFilter).call()) {
-          count++;
+        try (RevWalk pathWalk = walkContext.pathWalk(pathFilter, isFirstParent())) {
+          return String.valueOf(RevWalkUtils.count(pathWalk, pathWalk.parseCommit(evalCommit), null));
+        }
+      }
+      if (historyIndex != null) {
+        Long count = historyIndex.getTotalCommitCount(evalCommit.name());
+        if (count == null) {
+          count = countCommitsSinceIndexedCommit();
+          historyIndex.putTotalCommitCount(evalCommit.name(), count);
         }
         return String.valueOf(count);
       }
-      return String.valueOf(RevWalkUtils.count(revWalk, evalCommit, null));
+      return String.valueOf(countCommits());
     } catch (Throwable t) {
       // could not find any tags to describe
     }
     return "";
   }
 
+  private long countCommits() throws IOException {
+    RevWalk countingWalk = walkContext.countingWalk();
+    RevCommit start = countingWalk.parseCommit(evalCommit);
+    if (isFirstParent()) {
+      // the bitmaps hold all ancestors, the side branches can't be told apart
+      countingWalk.setFirstParent(true);
+      return RevWalkUtils.count(countingWalk, start, null);
+    }
+    ReachabilityBitmaps bitmaps = walkContext.getReachabilityBitmaps();
+    if (bitmaps != null) {
+      return bitmaps.countCommits(countingWalk, start);
+    }
+    ParallelCommitWalk parallelWalk = walkContext.parallelWalk(historyWalkThreads);
+    if (parallelWalk != null) {
+      return parallelWalk.countCommits(start);
+    }
+    return RevWalkUtils.count(countingWalk, start, null);
+  }
+
+  /**
+   * @return the total commit count, derived from the closest first parent whose count is in the history index
+   */
+  private long countCommitsSinceIndexedCommit() throws IOException {
+    RevWalk countingWalk = walkContext.countingWalk();
+    List<String> firstParents = new ArrayList<>();
+    RevCommit commit = countingWalk.parseCommit(evalCommit);
+    while (commit != null && firstParents.size() < HistoryIndex.MAX_ANCESTOR_DISTANCE) {
+      firstParents.add(commit.name());
+      commit = commit.getParentCount() > 0 ? countingWalk.parseCommit(commit.getParent(0)) : null;
+    }
+    String indexedCommit = historyIndex.findIndexedCommit(firstParents);
+    if (indexedCommit == null) {
+      return countCommits();
+    }
+    // everything reachable from the indexed commit is counted already
+    countingWalk.setFirstParent(isFirstParent());
+    return historyIndex.getTotalCommitCount(indexedCommit) + RevWalkUtils.count(countingWalk,
+        countingWalk.parseCommit(evalCommit), countingWalk.parseCommit(ObjectId.fromString(indexedCommit)));
+  }
+
+  @Override
+  public File getGitDirectory() {
+    return git.getDirectory();
+  }
+
+  @Override
+  public boolean mayRewriteHistory() throws GitCommitIdExecutionException {
+    try {
+      return walkContext.mayRewriteParents();
+    } catch (IOException e) {
+      throw new GitCommitIdExecutionException(e);
+    }
+  }
+
+  @Override
+  public void writeCommitGraph() {
+    try {
+      CommitGraphMaintenance.refresh(walkContext, log);
+    } catch (IOException e) {
+      log.warn("Failed to write the commit-graph: " + e.getMessage());
+    }
+  }
+
   @Override
   public void finalCleanUp() {
-    if (revWalk != null) {
-      revWalk.dispose();
+    if (walkContext != null) {
+      walkContext.close();
+      walkContext = null;
     }
-    // http://www.programcreek.com/java-api-examples/index.php?api=org.eclipse.jgit.storage.file.WindowCacheConfig
-    // Example 3
     if (git != null) {
-      git.close();
-      // git.close() is not enough with jGit on Windows
-      // remove the references from packFile by initializing cache used in the repository
-      // fixing lock issues on Windows when repository has pack files
-      WindowCacheConfig config = new WindowCacheConfig();
-      config.install();
+      boolean releaseFileHandles = JGitWindowCache.shouldReleaseAfterRun(jGitCacheConfig);
+      if (repositoryFromCache) {
+        // hand the repository back, so the next module of the reactor can reuse it
+        JGitRepositoryCache.release(git, releaseFileHandles);
+        git = null;
+        repositoryFromCache = false;
+      } else {
+        git.close();
+      }
+      if (releaseFileHandles) {
+        // git.close() is not enough with jGit on Windows
+        // remove the references from packFile by initializing cache used in the repository
+        // fixing lock issues on Windows when repository has pack files
+        // http://www.programcreek.com/java-api-examples/index.php?api=org.eclipse.jgit.storage.file.WindowCacheConfig
+        // Example 3
+        JGitWindowCache.releasePackFiles(jGitCacheConfig);
+      }
     }
   }
 
@@ -415,14 +587,9 @@ public class JGitProvider extends GitDataProvider {
   private Repository getGitRepository() throws GitCommitIdExecutionException {
     Repository repository;
 
-    FileRepositoryBuilder repositoryBuilder = new FileRepositoryBuilder();
     try {
-      repository = repositoryBuilder
-        .setGitDir(dotGitDirectory)
-        .readEnvironment() // scan environment GIT_* variables
-        .findGitDir() // scan up the file system tree
-        .build();
-    } catch (IOException e) {
+      repository = JGitRepositoryCache.acquire(dotGitDirectory);
+    } catch (IOException | IllegalArgumentException e) {
       throw new GitCommitIdExecutionException("Could not initialize repository...", e);
     }
 
@@ -0,0 +1,135 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core;
+
+import org.jspecify.annotations.NonNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Shares the dirty state of the modules of a build (see {@link GitDataProvider#modulePathFilters}), found
+ * in a single scan of the working tree, between the runs of these modules.
+ *
+ * <p>The first module to ask scans the working tree for all modules, the other modules then take their state
+ * from that scan instead of scanning the working tree on their own. The modules built in parallel wait for
+ * that scan, while the scans of other repositories (or with other options) run alongside.</p>
+ *
+ * <p>Each state is handed out once, and only within the same build, as told by the build id the caller
+ * passes (see {@link GitDataProvider#setBuildId(String)}), however long the build takes. A module asking
+ * again, a module asking after a commit, and a module of another build (e.g. the next build of a long-living
+ * build daemon, after the previous one failed or skipped it) start a new scan for all modules, which sees the
+ * changes made in between. The states that were never asked for are dropped with their scan, which only the
+ * latest scan of each repository is kept for.</p>
+ */
+final class ModuleDirtyStates {
+
+  /**
+   * Scans the working tree for several modules at once.
+   */
+  @FunctionalInterface
+  interface Scan {
+    /**
+     * @param modules the paths of the modules (relative to the work tree)
+     * @return the modules whose working tree is dirty
+     * @throws GitCommitIdExecutionException if the working tree could not be checked
+     */
+    @NonNull
+    Set<String> findDirtyModules(@NonNull Collection<String> modules) throws GitCommitIdExecutionException;
+  }
+
+  // the latest scan whose states were not all handed out yet, by the repository and the options
+  private static final Map<List<Object>, PendingScan> PENDING_SCANS = new HashMap<>();
+
+  private ModuleDirtyStates() {
+  }
+
+  /**
+   * @param scanKey identifies the repository and the options of the scan
+   * @param buildId identifies the build, a scan is only shared between the modules of the same build
+   * @param head identifies the commit {@code HEAD} points to, a scan is only shared while it is equal
+   * @param module the path of the module to tell the state of, one of {@code modules}
+   * @param modules the paths of all modules of the build
+   * @param scan scans the working tree if the state of the module was not found yet
+   * @return {@code true} if the working tree of the module is dirty
+   * @throws GitCommitIdExecutionException if the working tree could not be checked
+   */
+  static boolean isDirty(@NonNull List<Object> scanKey, @NonNull String buildId, @NonNull Object head,
+      @NonNull String module, @NonNull Collection<String> modules, @NonNull Scan scan) throws GitCommitIdExecutionException {
+    List<Object> build = List.of(buildId, head, new HashSet<>(modules));
+    PendingScan pendingScan;
+    boolean ownScan = false;
+    synchronized (PENDING_SCANS) {
+      pendingScan = PENDING_SCANS.get(scanKey);
+      if (pendingScan == null || !pendingScan.build.equals(build) || !pendingScan.pendingModules.remove(module)) {
+        // replaces the scan of an earlier build, with the states nobody asked for
+        pendingScan = new PendingScan(build, modules);
+        pendingScan.pendingModules.remove(module);
+        ownScan = true;
+      }
+      if (pendingScan.pendingModules.isEmpty()) {
+        PENDING_SCANS.remove(scanKey);
+      } else {
+        PENDING_SCANS.put(scanKey, pendingScan);
+      }
+    }
+
+    if (ownScan) {
+      // outside the lock, the other modules wait for the result of this scan only
+      try {
+        Set<String> dirtyModules = scan.findDirtyModules(modules);
+        pendingScan.result.complete(dirtyModules);
+        return dirtyModules.contains(module);
+      } catch (GitCommitIdExecutionException | RuntimeException e) {
+        pendingScan.result.completeExceptionally(e);
+        synchronized (PENDING_SCANS) {
+          PENDING_SCANS.remove(scanKey, pendingScan);
+        }
+        throw e;
+      }
+    }
+    try {
+      return pendingScan.result.get().contains(module);
+    } catch (ExecutionException e) {
+      // the module which scanned reports the failure, this one tries on its own
+      return scan.findDirtyModules(modules).contains(module);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GitCommitIdExecutionException("Interrupted while waiting for the dirty state of " + module, e);
+    }
+  }
+
+  private static final class PendingScan {
+    // the build id, HEAD and the modules the scan was made for
+    private final List<Object> build;
+    // the modules whose state was not handed out yet, guarded by PENDING_SCANS
+    private final Set<String> pendingModules;
+    private final CompletableFuture<Set<String>> result = new CompletableFuture<>();
+
+    private PendingScan(@NonNull List<Object> build, @NonNull Collection<String> modules) {
+      this.build = build;
+      this.pendingModules = new HashSet<>(modules);
+    }
+  }
+}
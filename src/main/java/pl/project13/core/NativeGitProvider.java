@@ -22,12 +22,22 @@ import static java.lang.String.format;
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
 import pl.project13.core.git.GitDescribeConfig;
+import pl.project13.core.jgit.DescribeWalk;
 import pl.project13.core.log.LogInterface;
+import pl.project13.core.util.Pair;
 
 
 import java.io.*;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
@@ -44,6 +54,18 @@ public class NativeGitProvider extends GitDataProvider {
 
   final File canonical;
 
+  /**
+   * The closest tag, searched once for {@code git.commit.id.describe} and both {@code git.closest.tag.*} properties.
+   */
+  private final SupplierEx<Optional<ClosestTag>> closestTag = memoize(this::describeClosestTag);
+
+  /**
+   * The changes of the working tree, read once for both {@code git.dirty} and the dirty mark of describe.
+   */
+  private final SupplierEx<Optional<List<String>>> workTreeChanges = memoize(this::readWorkTreeChanges);
+
+  private final Map<String, String> latestCommitsForPath = new HashMap<>();
+
   @NonNull
   public static NativeGitProvider on(@NonNull File dotGitDirectory, long nativeGitTimeoutInMs, @NonNull LogInterface log) {
     return new NativeGitProvider(dotGitDirectory, nativeGitTimeoutInMs, log);
@@ -150,6 +172,20 @@ public class NativeGitProvider extends GitDataProvider {
 
   @Override
   public String getGitDescribe() throws GitCommitIdExecutionException {
+    // put together from the closest tag search, like git describe would print it
+    Optional<ClosestTag> tag = closestTag.get();
+    int abbrev = gitDescribe != null ? gitDescribe.getAbbrev() : -1;
+    boolean forceLongFormat = gitDescribe != null && gitDescribe.getForceLongFormat();
+    if (tag.isPresent() && !(abbrev == 0 && forceLongFormat)) {
+      String describe = tag.get().name;
+      if (abbrev != 0 && (forceLongFormat || !tag.get().commitCount.equals("0"))) {
+        describe += "-" + tag.get().commitCount + "-g" + getAbbreviatedCommitId(tag.get(), abbrev);
+      }
+      return describe + getDescribeDirtyMark();
+    }
+
+    // without a tag (git describes the commit with its hash when told to --always, and fails otherwise),
+    // or with options git rejects, let git describe tell
     if (pathFilter != null) {
       // When path filter is present, we need to find the latest commit for that path first
       String latestCommitForPath = findLatestCommitForPath(pathFilter);
@@ -165,7 +201,34 @@ public class NativeGitProvider extends GitDataProvider {
     final String argumentsForGitDescribe = getArgumentsForGitDescribe(gitDescribe);
     return runQuietGitCommand(
             canonical, nativeGitTimeoutInMs,
-            "describe" + argumentsForGitDescribe);
+            "describe" + argumentsForGitDescribe) + getDescribeDirtyMark();
+  }
+
+  /**
+   * @param abbrev the minimum length of the abbreviated commit id, {@code -1} for git's default
+   */
+  private String getAbbreviatedCommitId(ClosestTag tag, int abbrev) throws GitCommitIdExecutionException {
+    if (tag.abbreviatedCommitId != null) {
+      return tag.abbreviatedCommitId;
+    }
+    return runQuietGitCommand(canonical, nativeGitTimeoutInMs,
+            "rev-parse --short" + (abbrev > 0 ? "=" + abbrev : "") + " " + tag.commitId);
+  }
+
+  /**
+   * Appends the dirty mark like {@code git describe --dirty} would, from the changes of the working tree that
+   * {@code git.dirty} is told from as well, instead of letting describe scan the working tree once more.
+   */
+  private String getDescribeDirtyMark() throws GitCommitIdExecutionException {
+    final String dirtyMark = gitDescribe != null ? gitDescribe.getDirty() : null;
+    if (dirtyMark == null || dirtyMark.isEmpty() || evalCommitIsNotHead() || pathFilter != null) {
+      return "";
+    }
+    // like git describe, untracked files don't count
+    boolean dirty = workTreeChanges.get()
+            .map(changes -> changes.stream().anyMatch(change -> !change.startsWith("??")))
+            .orElse(true);
+    return dirty ? dirtyMark : "";
   }
 
   private String getArgumentsForGitDescribe(GitDescribeConfig describeConfig) {
@@ -191,9 +254,8 @@ public class NativeGitProvider extends GitDataProvider {
       // also, we can't have path filter and --dirty flag set at the same time
       if (hasCommitish || hasPathFilter) {
         log.warn("You might use strange arguments since it's unfortunately not supported to have evaluateOnCommit/path filter and the --dirty flag for the describe command set at the same time");
-      } else {
-        argumentsForGitDescribe.append(" --dirty=").append(dirtyMark);
       }
+      // the mark itself is appended by getGitDescribe()
     }
 
     final String matchOption = describeConfig.getMatch();
@@ -210,9 +272,22 @@ public class NativeGitProvider extends GitDataProvider {
     if (describeConfig.getForceLongFormat()) {
       argumentsForGitDescribe.append(" --long");
     }
+
+    if (describeConfig.isFirstParent()) {
+      argumentsForGitDescribe.append(" --first-parent");
+    }
+
+    appendCandidates(argumentsForGitDescribe, describeConfig);
     return argumentsForGitDescribe.toString();
   }
 
+  private static void appendCandidates(StringBuilder argumentsForGitDescribe, GitDescribeConfig describeConfig) {
+    // only when it differs from git's default, like the JGit describe
+    if (describeConfig.getCandidates() != DescribeWalk.DEFAULT_MAX_CANDIDATES) {
+      argumentsForGitDescribe.append(" --candidates=").append(describeConfig.getCandidates());
+    }
+  }
+
   @Override
   public String getCommitId() throws GitCommitIdExecutionException {
     // For per-module versions, find the latest commit that touched the module path
@@ -252,14 +327,26 @@ public class NativeGitProvider extends GitDataProvider {
    */
   @Nullable
   private String findLatestCommitForPath(@NonNull String path) throws GitCommitIdExecutionException {
+    // asked for by most properties in per-module mode, each lookup is a path filtered history walk
+    String key = evaluateOnCommit + " -- " + path;
+    if (latestCommitsForPath.containsKey(key)) {
+      return latestCommitsForPath.get(key);
+    }
+    String latestCommit;
     try {
-      return runQuietGitCommand(
+      latestCommit = runQuietGitCommand(
               canonical, nativeGitTimeoutInMs,
-              "log -n 1 --format=%H --no-show-signature " + evaluateOnCommit + " -- " + path);
+              "log -n 1" + firstParentOption() + " --format=%H --no-show-signature " + evaluateOnCommit + " -- " + path);
     } catch (GitCommitIdExecutionException e) {
       log.warn("Failed to find latest commit for path: " + path + ", falling back to normal behavior");
-      return null;
+      latestCommit = null;
     }
+    latestCommitsForPath.put(key, latestCommit);
+    return latestCommit;
+  }
+
+  private String firstParentOption() {
+    return isFirstParent() ? " --first-parent" : "";
   }
 
   @Override
@@ -278,10 +365,110 @@ public class NativeGitProvider extends GitDataProvider {
 
   @Override
   public boolean isDirty() throws GitCommitIdExecutionException {
+    if (pathFilter != null && buildId != null && modulePathFilters.contains(pathFilter)) {
+      // finds the dirty state of the other modules along the way, which take it from there
+      return ModuleDirtyStates.isDirty(
+              List.of(canonical, "native", checkSubmodulesForDirtyState, trustFileStatForDirtyState),
+              buildId, getHeadForDirtyStates(), pathFilter, modulePathFilters, this::findDirtyModules);
+    }
+    return workTreeChanges.get().map(changes -> !changes.isEmpty()).orElse(true);
+  }
+
+  /**
+   * @return the commit {@code HEAD} points to, a new object (equal to no other) if there is none yet
+   */
+  private Object getHeadForDirtyStates() {
+    try {
+      return runQuietGitCommand(canonical, nativeGitTimeoutInMs, "rev-parse HEAD");
+    } catch (GitCommitIdExecutionException e) {
+      return new Object();
+    }
+  }
+
+  /**
+   * Runs {@code git status} once for all modules, and tells the modules apart by the paths it lists.
+   */
+  private Set<String> findDirtyModules(Collection<String> modules) {
+    String pathSpec = " -- " + String.join(" ", modules);
+    String ignoreSubmodules = checkSubmodulesForDirtyState ? "" : " --ignore-submodules=all";
+    // the porcelain format of status doesn't start with a blank, which is trimmed from the output
+    String command = trustFileStatForDirtyState
+            ? "-c core.quotePath=false diff-index --name-only" + ignoreSubmodules + " HEAD" + pathSpec
+            : "-c core.quotePath=false status --porcelain=v2" + ignoreSubmodules + pathSpec;
+    String changes;
+    try {
+      changes = runQuietGitCommand(canonical, nativeGitTimeoutInMs, command);
+    } catch (GitCommitIdExecutionException ex) {
+      log.error("Failed to run git command", ex);
+      // an error means "dirty"
+      return new HashSet<>(modules);
+    }
+    Set<String> dirtyModules = new HashSet<>();
+    for (String change : changes.split("\n")) {
+      if (change.isEmpty()) {
+        continue;
+      }
+      for (String path : trustFileStatForDirtyState ? Collections.singletonList(change) : getStatusPaths(change)) {
+        path = path.startsWith("\"") && path.endsWith("\"") ? path.substring(1, path.length() - 1) : path;
+        for (String module : modules) {
+          if (isWithinModule(path, module)) {
+            dirtyModules.add(module);
+          }
+        }
+      }
+    }
+    return dirtyModules;
+  }
+
+  /**
+   * @return the paths of a line of {@code git status --porcelain=v2}, both of them for a rename
+   */
+  private static List<String> getStatusPaths(String change) {
+    switch (change.charAt(0)) {
+      case '1':
+        return Collections.singletonList(change.split(" ", 9)[8]);
+      case '2':
+        return Arrays.asList(change.split(" ", 10)[9].split("\t"));
+      case 'u':
+        return Collections.singletonList(change.split(" ", 11)[10]);
+      case '?':
+        return Collections.singletonList(change.substring(2));
+      default:
+        return Collections.emptyList();
+    }
+  }
+
+  /**
+   * @return {@code true} if the changed path is within the module, or is an untracked directory containing it
+   */
+  private static boolean isWithinModule(String path, String module) {
+    String modulePath = module.endsWith("/") ? module.substring(0, module.length() - 1) : module;
+    if (modulePath.equals(".") || modulePath.isEmpty()) {
+      return true;
+    }
+    return path.equals(modulePath)
+            || path.startsWith(modulePath + "/")
+            || (path.endsWith("/") && (modulePath + "/").startsWith(path));
+  }
+
+  /**
+   * @return the lines of {@code git status -s}, empty if the working tree could not be read
+   */
+  private Optional<List<String>> readWorkTreeChanges() {
     String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
-    return !tryCheckEmptyRunGitCommand(
-            canonical, nativeGitTimeoutInMs,
-            "status -s" + pathSpec);
+    String ignoreSubmodules = checkSubmodulesForDirtyState ? "" : " --ignore-submodules=all";
+    // unlike status, diff-index doesn't refresh the index, so files whose attributes differ are not read
+    String command = trustFileStatForDirtyState
+            ? "diff-index --name-only" + ignoreSubmodules + " HEAD" + pathSpec
+            : "status -s" + ignoreSubmodules + pathSpec;
+    try {
+      String changes = runQuietGitCommand(canonical, nativeGitTimeoutInMs, command);
+      return Optional.of(changes.isEmpty() ? Collections.emptyList() : Arrays.asList(changes.split("\n")));
+    } catch (GitCommitIdExecutionException ex) {
+      log.error("Failed to run git command", ex);
+      // an error means "dirty"
+      return Optional.empty();
+    }
   }
 
   @Override
@@ -289,7 +476,7 @@ public class NativeGitProvider extends GitDataProvider {
     String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
     return runQuietGitCommand(
             canonical, nativeGitTimeoutInMs,
-            "log -1 --pretty=format:%an --no-show-signature " + evaluateOnCommit + pathSpec);
+            "log -1" + firstParentOption() + " --pretty=format:%an --no-show-signature " + evaluateOnCommit + pathSpec);
   }
 
   @Override
@@ -297,7 +484,7 @@ public class NativeGitProvider extends GitDataProvider {
     String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
     return runQuietGitCommand(
             canonical, nativeGitTimeoutInMs,
-            "log -1 --pretty=format:%ae --no-show-signature " + evaluateOnCommit + pathSpec);
+            "log -1" + firstParentOption() + " --pretty=format:%ae --no-show-signature " + evaluateOnCommit + pathSpec);
   }
 
   @Override
@@ -305,7 +492,7 @@ public class NativeGitProvider extends GitDataProvider {
     String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
     return runQuietGitCommand(
             canonical, nativeGitTimeoutInMs,
-            "log -1 --pretty=format:%B --no-show-signature " + evaluateOnCommit + pathSpec);
+            "log -1" + firstParentOption() + " --pretty=format:%B --no-show-signature " + evaluateOnCommit + pathSpec);
   }
 
   @Override
@@ -313,7 +500,7 @@ public class NativeGitProvider extends GitDataProvider {
     String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
     return runQuietGitCommand(
             canonical, nativeGitTimeoutInMs,
-            "log -1 --pretty=format:%s --no-show-signature " + evaluateOnCommit + pathSpec);
+            "log -1" + firstParentOption() + " --pretty=format:%s --no-show-signature " + evaluateOnCommit + pathSpec);
   }
 
   @Override
@@ -321,7 +508,7 @@ public class NativeGitProvider extends GitDataProvider {
     String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
     String value = runQuietGitCommand(
             canonical, nativeGitTimeoutInMs,
-            "log -1 --pretty=format:%ct --no-show-signature " + evaluateOnCommit + pathSpec);
+            "log -1" + firstParentOption() + " --pretty=format:%ct --no-show-signature " + evaluateOnCommit + pathSpec);
     SimpleDateFormat smf = getSimpleDateFormatWithTimeZone();
     return smf.format(Long.parseLong(value) * 1000L);
   }
@@ -331,7 +518,7 @@ public class NativeGitProvider extends GitDataProvider {
     String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
     String value = runQuietGitCommand(
             canonical, nativeGitTimeoutInMs,
-            "log -1 --pretty=format:%at --no-show-signature " + evaluateOnCommit + pathSpec);
+            "log -1" + firstParentOption() + " --pretty=format:%at --no-show-signature " + evaluateOnCommit + pathSpec);
     SimpleDateFormat smf = getSimpleDateFormatWithTimeZone();
     return smf.format(Long.parseLong(value) * 1000L);
   }
@@ -341,7 +528,7 @@ public class NativeGitProvider extends GitDataProvider {
     String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
     String value = runQuietGitCommand(
             canonical, nativeGitTimeoutInMs,
-            "log -1 --pretty=format:%ct --no-show-signature " + evaluateOnCommit + pathSpec);
+            "log -1" + firstParentOption() + " --pretty=format:%ct --no-show-signature " + evaluateOnCommit + pathSpec);
     SimpleDateFormat smf = getSimpleDateFormatWithTimeZone();
     return smf.format(Long.parseLong(value) * 1000L);
   }
@@ -371,69 +558,178 @@ public class NativeGitProvider extends GitDataProvider {
 
   @Override
   public String getClosestTagName() throws GitCommitIdExecutionException {
+    return closestTag.get().map(tag -> tag.name).orElse("");
+  }
+
+  @Override
+  public String getClosestTagCommitCount() throws GitCommitIdExecutionException {
+    Optional<ClosestTag> tag = closestTag.get();
+    if (!tag.isPresent()) {
+      return "";
+    }
+    if (pathFilter != null) {
+      // only count the commits touching the path
+      return runQuietGitCommand(
+              canonical, nativeGitTimeoutInMs,
+              "rev-list " + tag.get().name + ".." + evaluateOnCommit + " --count" + firstParentOption() + " -- " + pathFilter);
+    }
+    return tag.get().commitCount;
+  }
+
+  /**
+   * Runs {@code git describe --long} once, for the describe string, the closest tag name and its commit count.
+   *
+   * @return the closest tag, empty if there is no tag to describe
+   */
+  private Optional<ClosestTag> describeClosestTag() throws GitCommitIdExecutionException {
     if (pathFilter != null) {
       try {
         // When path filter is present, find the latest commit for that path first
         String latestCommitForPath = findLatestCommitForPath(pathFilter);
         if (latestCommitForPath != null && !latestCommitForPath.isEmpty()) {
           // Use git describe on the latest commit that touched this path
-          StringBuilder argumentsForGitDescribe = new StringBuilder();
-          argumentsForGitDescribe.append("describe " + latestCommitForPath + " --abbrev=0");
-          if (gitDescribe != null) {
-            if (gitDescribe.getTags()) {
-              argumentsForGitDescribe.append(" --tags");
-            }
-
-            final String matchOption = gitDescribe.getMatch();
-            if (matchOption != null && !matchOption.isEmpty()) {
-              argumentsForGitDescribe.append(" --match=").append(matchOption);
-            }
-          }
-          return runGitCommand(canonical, nativeGitTimeoutInMs, argumentsForGitDescribe.toString());
+          return Optional.of(describeClosestTag(latestCommitForPath));
         }
       } catch (Exception e) {
         log.warn("Failed to find tags for path: " + pathFilter + ", falling back to normal behavior");
       }
     }
     // Fallback to normal behavior
+    if (historyIndex != null) {
+      return getIndexedClosestTag();
+    }
     try {
-      StringBuilder argumentsForGitDescribe = new StringBuilder();
-      argumentsForGitDescribe.append("describe " + evaluateOnCommit + " --abbrev=0");
-      if (gitDescribe != null) {
-        if (gitDescribe.getTags()) {
-          argumentsForGitDescribe.append(" --tags");
-        }
+      return Optional.of(describeClosestTag(evaluateOnCommit));
+    } catch (NativeCommandException ignore) {
+      // could not find any tags to describe
+    }
+    return Optional.empty();
+  }
 
-        final String matchOption = gitDescribe.getMatch();
-        if (matchOption != null && !matchOption.isEmpty()) {
-          argumentsForGitDescribe.append(" --match=").append(matchOption);
-        }
-      }
-      return runGitCommand(canonical, nativeGitTimeoutInMs, argumentsForGitDescribe.toString());
+  /**
+   * @return the closest tag like {@link #describeClosestTag()}, from the history index if the commit was built
+   *         with the same tags before
+   */
+  private Optional<ClosestTag> getIndexedClosestTag() throws GitCommitIdExecutionException {
+    String tagRefs = runQuietGitCommand(
+            canonical, nativeGitTimeoutInMs,
+            "for-each-ref --format=%(objectname)%20%(refname) refs/tags");
+    String tagsKey = HistoryIndex.tagsKey(
+            tagRefs.isEmpty() ? Collections.emptyList() : Arrays.asList(tagRefs.split("\n")), gitDescribe);
+    String commitId = getIndexedCommitId();
+    Pair<String, String> indexedTag = historyIndex.getClosestTag(tagsKey, commitId);
+    if (indexedTag != null) {
+      // the index doesn't keep the abbreviated commit id, which is looked up if asked for
+      return indexedTag.first.isEmpty()
+              ? Optional.empty()
+              : Optional.of(new ClosestTag(indexedTag.first, indexedTag.second, null, commitId));
+    }
+    ClosestTag closestTag;
+    try {
+      closestTag = describeClosestTag(commitId);
     } catch (NativeCommandException ignore) {
       // could not find any tags to describe
+      historyIndex.putClosestTag(tagsKey, commitId, "", "");
+      return Optional.empty();
     }
-    return "";
+    historyIndex.putClosestTag(tagsKey, commitId, closestTag.name, closestTag.commitCount);
+    return Optional.of(closestTag);
   }
 
-  @Override
-  public String getClosestTagCommitCount() throws GitCommitIdExecutionException {
-    String closestTagName = getClosestTagName();
-    if (closestTagName != null && !closestTagName.trim().isEmpty()) {
-      String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
-      return runQuietGitCommand(
-              canonical, nativeGitTimeoutInMs,
-              "rev-list " + closestTagName + ".." + evaluateOnCommit + " --count" + pathSpec);
+  private String getIndexedCommitId() throws GitCommitIdExecutionException {
+    return runQuietGitCommand(canonical, nativeGitTimeoutInMs, "rev-parse " + evaluateOnCommit + "^{commit}");
+  }
+
+  private ClosestTag describeClosestTag(String commitish) throws GitCommitIdExecutionException {
+    StringBuilder argumentsForGitDescribe = new StringBuilder();
+    argumentsForGitDescribe.append("describe " + commitish + " --long");
+    if (gitDescribe != null) {
+      if (gitDescribe.getTags()) {
+        argumentsForGitDescribe.append(" --tags");
+      }
+
+      final String matchOption = gitDescribe.getMatch();
+      if (matchOption != null && !matchOption.isEmpty()) {
+        argumentsForGitDescribe.append(" --match=").append(matchOption);
+      }
+      if (gitDescribe.isFirstParent()) {
+        argumentsForGitDescribe.append(" --first-parent");
+      }
+      if (gitDescribe.getAbbrev() > 0) {
+        // the commit id as abbreviated by the describe property
+        argumentsForGitDescribe.append(" --abbrev=").append(gitDescribe.getAbbrev());
+      }
+      appendCandidates(argumentsForGitDescribe, gitDescribe);
     }
-    return "";
+    // TAG-N-gHASH, where the tag itself may contain dashes
+    String describe = runGitCommand(canonical, nativeGitTimeoutInMs, argumentsForGitDescribe.toString());
+    int hashStart = describe.lastIndexOf('-');
+    int countStart = describe.lastIndexOf('-', hashStart - 1);
+    return new ClosestTag(describe.substring(0, countStart), describe.substring(countStart + 1, hashStart),
+            describe.substring(hashStart + 2), commitish);
   }
 
   @Override
   public String getTotalCommitCount() throws GitCommitIdExecutionException {
+    if (pathFilter == null && historyIndex != null) {
+      String commitId = getIndexedCommitId();
+      Long count = historyIndex.getTotalCommitCount(commitId);
+      if (count == null) {
+        count = countCommitsSinceIndexedCommit(commitId);
+        historyIndex.putTotalCommitCount(commitId, count);
+      }
+      return String.valueOf(count);
+    }
     String pathSpec = pathFilter != null ? " -- " + pathFilter : "";
     return runQuietGitCommand(
             canonical, nativeGitTimeoutInMs,
-            "rev-list " + evaluateOnCommit + " --count" + pathSpec);
+            "rev-list " + evaluateOnCommit + " --count" + firstParentOption() + pathSpec);
+  }
+
+  /**
+   * @return the total commit count, derived from the closest first parent whose count is in the history index
+   */
+  private long countCommitsSinceIndexedCommit(String commitId) throws GitCommitIdExecutionException {
+    String firstParents = runQuietGitCommand(
+            canonical, nativeGitTimeoutInMs,
+            "rev-list --first-parent --max-count=" + HistoryIndex.MAX_ANCESTOR_DISTANCE + " " + commitId);
+    String indexedCommit = historyIndex.findIndexedCommit(Arrays.asList(firstParents.split("\n")));
+    if (indexedCommit == null) {
+      return Long.parseLong(runQuietGitCommand(canonical, nativeGitTimeoutInMs, "rev-list " + commitId + " --count" + firstParentOption()));
+    }
+    // everything reachable from the indexed commit is counted already
+    return historyIndex.getTotalCommitCount(indexedCommit) + Long.parseLong(runQuietGitCommand(
+            canonical, nativeGitTimeoutInMs,
+            "rev-list " + commitId + " ^" + indexedCommit + " --count" + firstParentOption()));
+  }
+
+  @Override
+  public File getGitDirectory() throws GitCommitIdExecutionException {
+    // native git runs within the working tree, so ask git where its git directory is
+    return new File(runQuietGitCommand(canonical, nativeGitTimeoutInMs, "rev-parse --absolute-git-dir"));
+  }
+
+  @Override
+  public boolean mayRewriteHistory() throws GitCommitIdExecutionException {
+    String[] shallowAndGrafts = runQuietGitCommand(canonical, nativeGitTimeoutInMs,
+        "rev-parse --is-shallow-repository --git-path info/grafts").split("\n");
+    File grafts = new File(shallowAndGrafts[1]);
+    if (!grafts.isAbsolute()) {
+      grafts = new File(canonical, shallowAndGrafts[1]);
+    }
+    return Boolean.parseBoolean(shallowAndGrafts[0])
+        || grafts.isFile()
+        || !runQuietGitCommand(canonical, nativeGitTimeoutInMs, "for-each-ref --count=1 refs/replace/").isEmpty();
+  }
+
+  @Override
+  public void writeCommitGraph() {
+    try {
+      // git takes the commit-graph.lock itself and fails when another process holds it
+      runQuietGitCommand(canonical, nativeGitTimeoutInMs, "commit-graph write --reachable --changed-paths");
+    } catch (GitCommitIdExecutionException e) {
+      log.warn("Failed to write the commit-graph: " + e.getMessage());
+    }
   }
 
   @Override
@@ -451,26 +747,6 @@ public class NativeGitProvider extends GitDataProvider {
     return null;
   }
 
-  /**
-   * Runs a Git command and returns {@code true} if output was non empty.
-   * Can be used to short cut reading output from command when we know it may be a rather long one.
-   * Return true if the result is empty.
-   **/
-  private boolean tryCheckEmptyRunGitCommand(File directory, long nativeGitTimeoutInMs, String gitCommand) {
-    try {
-      String env = System.getenv("GIT_PATH");
-      String exec = env == null ? "git" : env;
-      String command = String.format("%s %s", exec, gitCommand);
-
-      return getRunner().runEmpty(directory, nativeGitTimeoutInMs, command);
-    } catch (IOException | GitCommitIdExecutionException ex) {
-      log.error("Failed to run git command", ex);
-      // Error means "non-empty"
-      return false;
-      // do nothing...
-    }
-  }
-
   private String runQuietGitCommand(File directory, long nativeGitTimeoutInMs, String gitCommand) throws GitCommitIdExecutionException {
     final String env = System.getenv("GIT_PATH");
     final String exec = env == null ? "git" : env;
@@ -524,7 +800,9 @@ public class NativeGitProvider extends GitDataProvider {
      * @return false if the output of the command contains at least one line on stdout, true otherwise
      * @throws IOException if any underlying IOError occurred
      * @throws GitCommitIdExecutionException the command execution failed
+     * @deprecated not used by the provider any more, the dirty state is read once per run with {@link #run}
      */
+    @Deprecated
     boolean runEmpty(File directory, long nativeGitTimeoutInMs, String command) throws IOException, GitCommitIdExecutionException;
   }
 
@@ -597,6 +875,7 @@ public class NativeGitProvider extends GitDataProvider {
     }
 
     @Override
+    @Deprecated
     public boolean runEmpty(File directory, long nativeGitTimeoutInMs, String command) throws IOException, GitCommitIdExecutionException {
       final AtomicBoolean empty = new AtomicBoolean(true);
 
@@ -691,4 +970,23 @@ public class NativeGitProvider extends GitDataProvider {
   public void setEvaluateOnCommit(String evaluateOnCommit) {
     this.evaluateOnCommit = evaluateOnCommit;
   }
+
+  /**
+   * The closest tag of a commit, as told by {@code git describe --long}.
+   */
+  private static final class ClosestTag {
+    final String name;
+    final String commitCount;
+    // null if not known (yet)
+    @Nullable
+    final String abbreviatedCommitId;
+    final String commitId;
+
+    ClosestTag(String name, String commitCount, @Nullable String abbreviatedCommitId, String commitId) {
+      this.name = name;
+      this.commitCount = commitCount;
+      this.abbreviatedCommitId = abbreviatedCommitId;
+      this.commitId = commitId;
+    }
+  }
 }
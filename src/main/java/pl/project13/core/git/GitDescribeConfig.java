@@ -17,6 +17,8 @@
 
 package pl.project13.core.git;
 
+import pl.project13.core.jgit.DescribeWalk;
+
 /**
  * Represents options passed in via maven configuration,
  * corresponds to options of git-describe.
@@ -24,6 +26,12 @@ package pl.project13.core.git;
 @SuppressWarnings("JavaDoc")
 public class GitDescribeConfig {
 
+  /**
+   * The largest supported <pre>--candidates</pre>. Each candidate takes a flag of the JGit {@code RevWalk},
+   * which has 24 of them for applications, 2 of which the describe search needs for itself.
+   */
+  public static final int MAX_CANDIDATES = 22;
+
   /**
    * If you don't use describe, you can always disable it and make the build a bit faster.
    *
@@ -153,6 +161,68 @@ public class GitDescribeConfig {
    */
   private boolean forceLongFormat = false;
 
+  /**
+   * <pre>--candidates=N</pre>
+   * <p>
+   * Instead of considering only the 10 most recent tags as candidates to describe the input commit-ish,
+   * consider up to <b>N</b> candidates. Increasing <b>N</b> above 10 will take slightly longer but may
+   * produce a more accurate result. An <b>N</b> of 0 will cause only exact matches to be output.
+   * <b>N</b> must be between 0 and {@link #MAX_CANDIDATES}, for both the JGit and the native provider.
+   * </p>
+   *
+   * @parameter default-value=10
+   */
+  private int candidates = DescribeWalk.DEFAULT_MAX_CANDIDATES;
+
+  /**
+   * <p>
+   * The maximum number of commits to visit while searching for tags, before falling back to the
+   * <pre>--always</pre> output (the abbreviated commit id). This bounds the time spent on commits with
+   * no tag (matching <pre>--match</pre>) in their history, like a fresh fork without any tags. Once a tag
+   * was found, its distance is still computed exactly.
+   * </p>
+   *
+   * <p>
+   * There is no such option in git itself, so it only applies when JGit is used.
+   * <b>0</b> (the default) means there is no limit.
+   * </p>
+   *
+   * @parameter default-value=0
+   */
+  private int maxSearchDepth = 0;
+
+  /**
+   * <p>
+   * The number of seconds a commit may appear to be older than its parents, due to the clocks of the
+   * committers being off. When set, searching the closest tag (or the tags containing a commit for
+   * {@code git.tags}) skips the history behind commits that are more than this slop older than the commits
+   * searched for. When git has written a commit-graph, its generation numbers are used instead, which don't
+   * depend on the clocks at all.
+   * </p>
+   *
+   * <p>
+   * It only applies when JGit is used. A negative value (the default) never trusts the commit times, so that
+   * the closest tag and the tags always match the ones git finds. One day (86400) is the slop of
+   * <pre>git name-rev</pre>.
+   * </p>
+   *
+   * @parameter default-value=-1
+   */
+  private int clockSkewSlop = -1;
+
+  /**
+   * <pre>--first-parent</pre>
+   * <p>
+   * Follow only the first parent of merge commits, like on a merge-heavy integration branch where only the
+   * distance along the mainline matters. Besides describe and the closest tag (and its commit count), this
+   * also applies to {@code git.total.commit.count} and to finding the latest commit of a module in
+   * per-module mode, which then count and search the commits of the mainline only.
+   * </p>
+   *
+   * @parameter default-value=false
+   */
+  private boolean firstParent = false;
+
   public GitDescribeConfig() {
   }
 
@@ -221,6 +291,38 @@ public class GitDescribeConfig {
     this.tags = tags;
   }
 
+  public int getCandidates() {
+    return candidates;
+  }
+
+  public void setCandidates(int candidates) {
+    this.candidates = candidates;
+  }
+
+  public int getMaxSearchDepth() {
+    return maxSearchDepth;
+  }
+
+  public void setMaxSearchDepth(int maxSearchDepth) {
+    this.maxSearchDepth = maxSearchDepth;
+  }
+
+  public int getClockSkewSlop() {
+    return clockSkewSlop;
+  }
+
+  public void setClockSkewSlop(int clockSkewSlop) {
+    this.clockSkewSlop = clockSkewSlop;
+  }
+
+  public boolean isFirstParent() {
+    return firstParent;
+  }
+
+  public void setFirstParent(boolean firstParent) {
+    this.firstParent = firstParent;
+  }
+
   @Override
   public String toString() {
     return "GitDescribeConfig{" +
@@ -231,6 +333,10 @@ public class GitDescribeConfig {
         ", abbrev=" + abbrev +
         ", tags=" + tags +
         ", forceLongFormat=" + forceLongFormat +
+        ", candidates=" + candidates +
+        ", maxSearchDepth=" + maxSearchDepth +
+        ", clockSkewSlop=" + clockSkewSlop +
+        ", firstParent=" + firstParent +
         '}';
   }
 }
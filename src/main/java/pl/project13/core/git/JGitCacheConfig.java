@@ -0,0 +1,160 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.git;
+
+/**
+ * Represents options passed in via maven configuration,
+ * controls how the JGit based provider caches pack file data in the JVM.
+ *
+ * Every tuning option left at {@code null} keeps JGit's own default
+ * (see {@link org.eclipse.jgit.storage.file.WindowCacheConfig}).
+ */
+@SuppressWarnings("JavaDoc")
+public class JGitCacheConfig {
+
+  /**
+   * Defines when the JVM wide pack file cache of JGit gets dropped after a run.
+   */
+  public enum CleanUpMode {
+    /**
+     * Drop the cache and close the repository after every run.
+     * Every run (and every other JGit user in the JVM) starts with a cold cache.
+     */
+    ALWAYS,
+    /**
+     * Only drop the cache where open pack files would otherwise stay locked (i.e. on Windows).
+     */
+    AUTO,
+    /**
+     * Never drop the cache, keep it warm for all subsequent runs within the JVM.
+     */
+    NEVER
+  }
+
+  /**
+   * When to drop the pack file cache after a run.
+   *
+   * <b>AUTO</b> by default, which only releases the pack files on Windows.
+   *
+   * @parameter default-value="AUTO"
+   */
+  private CleanUpMode cleanUp = CleanUpMode.AUTO;
+
+  /**
+   * <pre>core.packedGitLimit</pre>
+   * Maximum number of bytes of pack file data held in memory at once.
+   *
+   * @parameter
+   */
+  private Long packedGitLimit;
+
+  /**
+   * <pre>core.packedGitWindowSize</pre>
+   * Number of bytes of a pack file loaded into memory in a single read.
+   *
+   * @parameter
+   */
+  private Integer packedGitWindowSize;
+
+  /**
+   * <pre>core.packedGitMMAP</pre>
+   * Use memory mapping for reading pack files.
+   *
+   * @parameter
+   */
+  private Boolean packedGitMMAP;
+
+  /**
+   * <pre>core.deltaBaseCacheLimit</pre>
+   * Maximum number of bytes of inflated delta bases held in memory.
+   *
+   * @parameter
+   */
+  private Integer deltaBaseCacheLimit;
+
+  /**
+   * <pre>core.streamFileThreshold</pre>
+   * Objects larger than this many bytes are streamed instead of being loaded into memory.
+   *
+   * @parameter
+   */
+  private Integer streamFileThreshold;
+
+  public JGitCacheConfig() {
+  }
+
+  public CleanUpMode getCleanUp() {
+    return cleanUp;
+  }
+
+  public void setCleanUp(CleanUpMode cleanUp) {
+    this.cleanUp = cleanUp;
+  }
+
+  public Long getPackedGitLimit() {
+    return packedGitLimit;
+  }
+
+  public void setPackedGitLimit(Long packedGitLimit) {
+    this.packedGitLimit = packedGitLimit;
+  }
+
+  public Integer getPackedGitWindowSize() {
+    return packedGitWindowSize;
+  }
+
+  public void setPackedGitWindowSize(Integer packedGitWindowSize) {
+    this.packedGitWindowSize = packedGitWindowSize;
+  }
+
+  public Boolean getPackedGitMMAP() {
+    return packedGitMMAP;
+  }
+
+  public void setPackedGitMMAP(Boolean packedGitMMAP) {
+    this.packedGitMMAP = packedGitMMAP;
+  }
+
+  public Integer getDeltaBaseCacheLimit() {
+    return deltaBaseCacheLimit;
+  }
+
+  public void setDeltaBaseCacheLimit(Integer deltaBaseCacheLimit) {
+    this.deltaBaseCacheLimit = deltaBaseCacheLimit;
+  }
+
+  public Integer getStreamFileThreshold() {
+    return streamFileThreshold;
+  }
+
+  public void setStreamFileThreshold(Integer streamFileThreshold) {
+    this.streamFileThreshold = streamFileThreshold;
+  }
+
+  @Override
+  public String toString() {
+    return "JGitCacheConfig{" +
+        "cleanUp=" + cleanUp +
+        ", packedGitLimit=" + packedGitLimit +
+        ", packedGitWindowSize=" + packedGitWindowSize +
+        ", packedGitMMAP=" + packedGitMMAP +
+        ", deltaBaseCacheLimit=" + deltaBaseCacheLimit +
+        ", streamFileThreshold=" + streamFileThreshold +
+        '}';
+  }
+}
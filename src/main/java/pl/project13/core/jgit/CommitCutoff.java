@@ -0,0 +1,106 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.jspecify.annotations.NonNull;
+
+import java.util.Collection;
+
+/**
+ * Tells whether a commit can't reach any of a set of target commits, without walking the history in between.
+ *
+ * <p>When the commit-graph of the repository knows the commit, its generation number decides: an ancestor
+ * always has a lower generation than its descendants, and the commits of the graph only have ancestors
+ * within the graph. This answer is exact. Otherwise the commit times may be compared, like git does when
+ * there are no generation numbers. A commit that is older than all targets can't reach them, unless
+ * the clocks of the committers were off. The slop allows for such clock skew. As that is a heuristic,
+ * which can miss tags behind commits of skewed clocks, it is only used when a slop is given.</p>
+ */
+public class CommitCutoff {
+
+  /**
+   * By default the commit times are not trusted at all, only generation numbers cut a search off.
+   */
+  public static final int DEFAULT_CLOCK_SKEW_SLOP = -1;
+
+  /**
+   * The clock skew git tolerates when it cuts off walks by commit time, see <pre>CUTOFF_DATE_SLOP</pre>
+   * of <pre>git name-rev</pre>.
+   */
+  public static final int NAME_REV_CLOCK_SKEW_SLOP = 24 * 60 * 60;
+
+  private final CommitGraphAccess commitGraph;
+  private final int clockSkewSlop;
+  private final boolean hasTargets;
+  private final int minGeneration;
+  private final boolean generationsKnown;
+  private final long minCommitTime;
+
+  /**
+   * @param commitGraph the commit-graph of the repository, {@link CommitGraphAccess#EMPTY} if there is none
+   * @param clockSkewSlop the number of seconds a commit may appear older than its ancestors,
+   *                      negative to not trust the commit times at all
+   * @param targets the commits to reach, with their headers parsed
+   */
+  CommitCutoff(@NonNull CommitGraphAccess commitGraph, int clockSkewSlop, @NonNull Collection<RevCommit> targets) {
+    this.commitGraph = commitGraph;
+    this.clockSkewSlop = clockSkewSlop;
+    this.hasTargets = !targets.isEmpty();
+
+    int minGeneration = Integer.MAX_VALUE;
+    boolean generationsKnown = true;
+    long minCommitTime = Long.MAX_VALUE;
+    for (RevCommit target : targets) {
+      int position = commitGraph.findGraphPosition(target);
+      if (position >= 0) {
+        int generation = commitGraph.getGeneration(position);
+        if (generation == 0) {
+          generationsKnown = false;
+        }
+        minGeneration = Math.min(minGeneration, generation);
+      }
+      minCommitTime = Math.min(minCommitTime, target.getCommitTime());
+    }
+    this.minGeneration = minGeneration;
+    this.generationsKnown = generationsKnown;
+    this.minCommitTime = minCommitTime;
+  }
+
+  /**
+   * @param commit a commit with its headers parsed, not one of the targets itself
+   * @return {@code true} if the commit can't reach any of the targets, {@code false} if it might
+   */
+  public boolean cannotReach(@NonNull RevCommit commit) {
+    if (!hasTargets) {
+      return true;
+    }
+    int generation = generationOf(commit);
+    if (generation > 0 && generationsKnown) {
+      // targets outside of the graph are newer than the graph, no commit within the graph reaches them
+      return generation <= minGeneration;
+    }
+    return clockSkewSlop >= 0 && (long) commit.getCommitTime() + clockSkewSlop < minCommitTime;
+  }
+
+  private int generationOf(@NonNull AnyObjectId commit) {
+    int position = commitGraph.findGraphPosition(commit);
+    return position >= 0 ? commitGraph.getGeneration(position) : 0;
+  }
+}
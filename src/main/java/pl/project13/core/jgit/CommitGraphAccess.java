@@ -0,0 +1,206 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.internal.storage.commitgraph.ChangedPathFilter;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphLoader;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The commit-graph of a repository, as far as the walks of this library use it.
+ *
+ * <p>JGit reads and writes commit-graphs through the classes of its {@code internal} packages only, which
+ * are not part of its API and may change with any release. This is the only class touching them. When
+ * they are missing or changed, it falls back to a repository without a commit-graph: the walks read the
+ * commit objects, no search gets cut off by generation numbers, and no commit-graph is written.</p>
+ */
+final class CommitGraphAccess {
+
+  /**
+   * No commit-graph at all.
+   */
+  static final CommitGraphAccess EMPTY = new CommitGraphAccess(null);
+
+  @Nullable
+  private final CommitGraph graph;
+
+  private CommitGraphAccess(@Nullable CommitGraph graph) {
+    this.graph = graph;
+  }
+
+  /**
+   * @param repository the repository to read the commit-graph of
+   * @param reader a reader of the repository, to take the commit-graph from when it isn't stored on disk
+   * @param readChangedPaths {@code true} to also read the changed path filters
+   * @return the commit-graph, {@link #EMPTY} if there is none (or JGit can't read it)
+   * @throws IOException if the commit-graph could not be read
+   */
+  @NonNull
+  static CommitGraphAccess load(@NonNull Repository repository, @NonNull ObjectReader reader, boolean readChangedPaths) throws IOException {
+    try {
+      File file = fileOf(repository);
+      if (file == null) {
+        return reader.getCommitGraph().map(CommitGraphAccess::new).orElse(EMPTY);
+      }
+      if (!file.isFile()) {
+        return EMPTY;
+      }
+      try (InputStream in = new FileInputStream(file)) {
+        return new CommitGraphAccess(CommitGraphLoader.read(in, readChangedPaths));
+      }
+    } catch (LinkageError e) {
+      return EMPTY;
+    }
+  }
+
+  /**
+   * @param repository the repository to locate the commit-graph of
+   * @return the commit-graph file, {@code null} if the repository isn't stored on disk (or JGit can't tell)
+   */
+  @Nullable
+  static File fileOf(@NonNull Repository repository) {
+    try {
+      if (repository.getObjectDatabase() instanceof ObjectDirectory) {
+        return new File(((ObjectDirectory) repository.getObjectDatabase()).getDirectory(), "info/commit-graph");
+      }
+    } catch (LinkageError e) {
+      // nothing is read from or written to the file then
+    }
+    return null;
+  }
+
+  /**
+   * Writes the commits reachable from the given tips to the commit-graph file, under the same lock git takes.
+   *
+   * @param file the commit-graph file, see {@link #fileOf(Repository)}
+   * @param reader the reader to read the commits through, the changed path filters it provides are taken over
+   * @param tips the commits to start from
+   * @return {@code false} if another process holds the lock
+   * @throws IOException if the history could not be read, or the commit-graph could not be written
+   */
+  static boolean write(@NonNull File file, @NonNull ObjectReader reader, @NonNull Set<ObjectId> tips) throws IOException {
+    try {
+      LockFile lock = new LockFile(file);
+      if (!lock.lock()) {
+        return false;
+      }
+      try {
+        try (RevWalk walk = new RevWalk(reader);
+             OutputStream out = lock.getOutputStream()) {
+          GraphCommits commits = GraphCommits.fromWalk(NullProgressMonitor.INSTANCE, tips, walk);
+          new CommitGraphWriter(commits, true).write(NullProgressMonitor.INSTANCE, out);
+        }
+        if (!lock.commit()) {
+          throw new IOException("Could not move the new commit-graph to " + file);
+        }
+      } finally {
+        lock.unlock();
+      }
+      return true;
+    } catch (LinkageError e) {
+      throw new IOException("This version of JGit can't write commit-graphs", e);
+    }
+  }
+
+  /**
+   * @param reader the reader to wrap
+   * @param commitGraph provides the commit-graph to hand to the walks, asked for whenever a walk is created
+   * @return a reader whose walks read the parents, the commit time and the tree of the commits from the
+   *         commit-graph, instead of inflating the commit objects from the pack files
+   */
+  @NonNull
+  static ObjectReader readingFrom(@NonNull ObjectReader reader, @NonNull Supplier<CommitGraphAccess> commitGraph) {
+    return new ObjectReader.Filter() {
+      @Override
+      protected ObjectReader delegate() {
+        return reader;
+      }
+
+      @Override
+      public Optional<CommitGraph> getCommitGraph() {
+        return Optional.ofNullable(commitGraph.get().graph);
+      }
+    };
+  }
+
+  /**
+   * @return the number of commits in the commit-graph
+   */
+  long getCommitCount() {
+    return graph != null ? graph.getCommitCnt() : 0;
+  }
+
+  /**
+   * @param commit the commit to look up
+   * @return the position of the commit within the commit-graph, {@code -1} if it isn't part of it
+   */
+  int findGraphPosition(@NonNull AnyObjectId commit) {
+    return graph != null ? graph.findGraphPosition(commit) : -1;
+  }
+
+  /**
+   * @param position the position of a commit within the commit-graph
+   * @return the generation number of the commit, {@code 0} if the commit-graph doesn't know it
+   */
+  int getGeneration(int position) {
+    int generation = graph.getCommitData(position).getGeneration();
+    return generation == Constants.COMMIT_GENERATION_UNKNOWN ? 0 : generation;
+  }
+
+  /**
+   * @param position the position of a commit within the commit-graph
+   * @return the positions of the parents of the commit
+   */
+  @NonNull
+  int[] getParents(int position) {
+    return graph.getCommitData(position).getParents();
+  }
+
+  /**
+   * @param position the position of a commit within the commit-graph
+   * @param path the path to check, as encoded by {@link RevWalkContext#changedPath(String)}
+   * @return {@code false} if the changed path filter of the commit rules out that the commit changed the path,
+   *         {@code true} if it might have (or the commit has no changed path filter)
+   */
+  boolean mayHaveChanged(int position, @NonNull byte[] path) {
+    ChangedPathFilter changedPaths = graph.getChangedPathFilter(position);
+    return changedPaths == null || changedPaths.maybeContains(path);
+  }
+}
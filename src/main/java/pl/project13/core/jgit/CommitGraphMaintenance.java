@@ -0,0 +1,103 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jspecify.annotations.NonNull;
+import pl.project13.core.log.LogInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Writes the commit-graph of a repository, like <pre>git commit-graph write --reachable --changed-paths</pre>,
+ * so that later runs read the commits from it (see {@link RevWalkContext#getCommitGraph()}).
+ *
+ * <p>The commit-graph is only rewritten when it misses a commit a ref points at. The changed path filters
+ * of the commits already in the graph are taken over, so a refresh only computes them for the new commits.
+ * The new file is written under <pre>commit-graph.lock</pre>, the same lock git takes, and renamed into place.
+ * When another build (or git) holds the lock, the refresh is skipped.</p>
+ */
+public final class CommitGraphMaintenance {
+
+  private CommitGraphMaintenance() {
+  }
+
+  /**
+   * @param context the context of the run, whose commit-graph gets refreshed
+   * @param log logger bridge to direct logs to
+   * @return {@code true} if a new commit-graph was written
+   * @throws IOException if the history could not be read or the commit-graph could not be written
+   */
+  public static boolean refresh(@NonNull RevWalkContext context, @NonNull LogInterface log) throws IOException {
+    Repository repository = context.getRepository();
+    File file = CommitGraphAccess.fileOf(repository);
+    if (file == null) {
+      log.debug("The commit-graph is only written for repositories on disk");
+      return false;
+    }
+    if (!context.getObjectReader().getShallowCommits().isEmpty()) {
+      log.debug("The commit-graph is not written for shallow repositories");
+      return false;
+    }
+
+    Set<ObjectId> tips = findTips(context);
+    CommitGraphAccess commitGraph = context.getCommitGraph();
+    if (tips.stream().allMatch(tip -> commitGraph.findGraphPosition(tip) >= 0)) {
+      log.debug("The commit-graph is up to date");
+      return false;
+    }
+
+    // reads through the reader of the context, which provides the changed path filters of the current graph
+    if (!CommitGraphAccess.write(file, context.getObjectReader(), tips)) {
+      log.info(String.format("Skipping to write the commit-graph, [%s] is locked by another process", file));
+      return false;
+    }
+    log.info(String.format("Wrote the commit-graph [%s]", file));
+    return true;
+  }
+
+  /**
+   * @return the commits all refs finally point at, like <pre>--reachable</pre>
+   */
+  @NonNull
+  private static Set<ObjectId> findTips(@NonNull RevWalkContext context) throws IOException {
+    RevWalk walk = context.countingWalk();
+    Set<ObjectId> tips = new HashSet<>();
+    for (Ref ref : context.getRepository().getRefDatabase().getRefs()) {
+      if (ref.getObjectId() == null) {
+        continue;
+      }
+      try {
+        RevCommit commit = walk.parseCommit(ref.getObjectId());
+        tips.add(commit.copy());
+      } catch (IncorrectObjectTypeException | MissingObjectException e) {
+        // refs of trees or blobs (or of objects that are gone) have no commits to add
+      }
+    }
+    return tips;
+  }
+}
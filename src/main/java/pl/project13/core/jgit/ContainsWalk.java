@@ -0,0 +1,139 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Answers which commits (usually the tagged ones) contain a given commit, like <pre>git tag --contains</pre>.
+ *
+ * <p>Asking {@link RevWalk#isMergedInto(RevCommit, RevCommit)} for every tag walks the history below
+ * each of the tags again. This walk instead remembers for every visited commit whether it reaches the
+ * given commit, so that the history shared by the tags is only traversed once.</p>
+ *
+ * <p>Commits that can't reach the given commit according to the {@link CommitCutoff} of the context are
+ * not descended into at all. Most notably, tags older than the given commit are discarded right away.
+ * Neither are commits with a reachability bitmap, whose bitmap tells whether they reach the given commit
+ * (see {@link ReachabilityBitmaps}).</p>
+ *
+ * <p>The walk marks the visited commits with flags of the counting walk of the context, they are removed
+ * again once this walk gets closed.</p>
+ */
+public class ContainsWalk implements AutoCloseable {
+
+  private final RevWalk walk;
+  private final CommitCutoff cutoff;
+  private final ReachabilityBitmaps bitmaps;
+  private final RevCommit target;
+  private final RevFlag contains;
+  private final RevFlag notContains;
+  private final List<RevCommit> marked = new ArrayList<>();
+
+  /**
+   * @param context the context to walk the history in
+   * @param commitId the commit to search for
+   * @throws IOException if the commit can't be read
+   */
+  public ContainsWalk(@NonNull RevWalkContext context, @NonNull AnyObjectId commitId) throws IOException {
+    this.walk = context.countingWalk();
+    this.target = walk.parseCommit(commitId);
+    this.cutoff = context.cutoff(List.of(target));
+    this.bitmaps = context.getReachabilityBitmaps();
+    this.contains = walk.newFlag("CONTAINS");
+    this.notContains = walk.newFlag("NOT_CONTAINS");
+    mark(target, contains);
+  }
+
+  /**
+   * @param tipId the commit to start from
+   * @return {@code true} if the searched commit is the given commit or one of its ancestors
+   * @throws IOException if one of the visited commits can't be read
+   */
+  public boolean isContainedIn(@NonNull AnyObjectId tipId) throws IOException {
+    RevCommit tip = walk.parseCommit(tipId);
+    // depth first, a commit is settled once all of its parents are (or one of them contains the commit)
+    Deque<RevCommit> stack = new ArrayDeque<>();
+    stack.push(tip);
+    while (!stack.isEmpty()) {
+      RevCommit commit = stack.peek();
+      if (isSettled(commit)) {
+        stack.pop();
+        continue;
+      }
+      if (cutoff.cannotReach(commit)) {
+        mark(commit, notContains);
+        stack.pop();
+        continue;
+      }
+      Boolean reaches = bitmaps != null ? bitmaps.reaches(commit, target) : null;
+      if (reaches != null) {
+        mark(commit, reaches ? contains : notContains);
+        stack.pop();
+        continue;
+      }
+      RevFlag result = notContains;
+      for (RevCommit parent : commit.getParents()) {
+        if (parent.has(contains)) {
+          result = contains;
+          break;
+        }
+        if (!parent.has(notContains)) {
+          walk.parseHeaders(parent);
+          stack.push(parent);
+          result = null;
+          break;
+        }
+      }
+      if (result != null) {
+        mark(commit, result);
+        stack.pop();
+      }
+    }
+    return tip.has(contains);
+  }
+
+  private boolean isSettled(@NonNull RevCommit commit) {
+    return commit.has(contains) || commit.has(notContains);
+  }
+
+  private void mark(@NonNull RevCommit commit, @NonNull RevFlag flag) {
+    commit.add(flag);
+    marked.add(commit);
+  }
+
+  @Override
+  public void close() {
+    for (RevCommit commit : marked) {
+      commit.remove(contains);
+      commit.remove(notContains);
+    }
+    marked.clear();
+    walk.disposeFlag(contains);
+    walk.disposeFlag(notContains);
+  }
+}
@@ -17,9 +17,9 @@
 
 package pl.project13.core.jgit;
 
-import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.GitCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
@@ -27,6 +27,8 @@ import org.eclipse.jgit.revwalk.RevCommit;
 
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
+import pl.project13.core.GitCommitIdExecutionException;
+import pl.project13.core.GitDataProvider.SupplierEx;
 import pl.project13.core.git.GitDescribeConfig;
 import pl.project13.core.log.LogInterface;
 import pl.project13.core.util.Pair;
@@ -43,12 +45,12 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
   private JGitCommon jGitCommon;
   private String evaluateOnCommit;
   private String pathFilter;
+  private RevWalkContext walkContext;
 
   //  TODO not yet implemented options:
   //  private boolean containsFlag = false;
   //  private boolean allFlag = false;
   //  private boolean tagsFlag = false;
-  //  private Optional<Integer> candidatesOption = Optional.of(10);
   //  private boolean exactMatchFlag = false;
 
   private Optional<String> matchOption = Optional.empty();
@@ -66,6 +68,21 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
 
   private boolean alwaysFlag = true;
 
+  /**
+   * Corresponds to <pre>--first-parent</pre>. Only follow the first parent of merge commits.
+   */
+  private boolean firstParentFlag = false;
+
+  /**
+   * Corresponds to <pre>--candidates=N</pre>. How many tags should be considered as candidates?
+   */
+  private int candidates = DescribeWalk.DEFAULT_MAX_CANDIDATES;
+
+  /**
+   * How many commits should be visited at most while searching for tags? 0 for no limit.
+   */
+  private int maxSearchDepth = 0;
+
   /**
    * Corresponds to <pre>--long</pre>. Always use the <pre>TAG-N-HASH</pre> format, even when ON a tag.
    */
@@ -76,6 +93,27 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
    */
   private Optional<String> dirtyOption = Optional.empty();
 
+  /**
+   * Whether the submodules are checked when telling if the working tree is dirty.
+   */
+  private boolean checkSubmodulesFlag = true;
+
+  /**
+   * The number of threads the work tree is scanned with when checking if it is dirty.
+   */
+  private int workTreeScanThreads = 1;
+
+  /**
+   * Whether the files of the work tree are compared with the index by their attributes only.
+   */
+  private boolean trustFileStatFlag = false;
+
+  /**
+   * Tells whether the working tree is dirty, {@code null} to check it when needed.
+   */
+  @Nullable
+  private SupplierEx<Boolean> dirtyState;
+
   /**
    * Creates a new describe command which interacts with a single repository
    *
@@ -224,6 +262,82 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
     return tags(true);
   }
 
+  /**
+   * <pre>--first-parent</pre>
+   *
+   * Follow only the first parent commit upon seeing a merge commit. This is useful when you wish to not
+   * match tags on branches merged in the history of the target commit.
+   *
+   * <pre>false</pre> by default.
+   *
+   * @param firstParent set to `true` if only the first parent of merge commits should be followed
+   * @return itself with the `--first-parent` option set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeCommand firstParent(@Nullable Boolean firstParent) {
+    if (firstParent != null && firstParent) {
+      this.firstParentFlag = true;
+      log.debug(String.format("--first-parent = %s", true));
+    }
+    return this;
+  }
+
+  /**
+   * <pre>--candidates=N</pre>
+   *
+   * Instead of considering only the 10 most recent tags as candidates to describe the input commit-ish,
+   * consider up to <b>N</b> candidates. Increasing <b>N</b> above 10 will take slightly longer but may
+   * produce a more accurate result. An <b>N</b> of 0 will cause only exact matches to be output.
+   * <b>N</b> must not exceed {@link GitDescribeConfig#MAX_CANDIDATES}.
+   *
+   * @param n the maximum number of candidates
+   * @return itself with the `--candidates` option set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeCommand candidates(@Nullable Integer n) {
+    if (n != null) {
+      if (n < 0 || n > GitDescribeConfig.MAX_CANDIDATES) {
+        throw new IllegalArgumentException(String.format("N (number of candidates) must be between 0 and %s! (Was [%s])",
+            GitDescribeConfig.MAX_CANDIDATES, n));
+      }
+      candidates = n;
+      log.debug(String.format("--candidates = %s", candidates));
+    }
+    return this;
+  }
+
+  /**
+   * Limits the number of commits that are visited while searching for tags. If no tag was found within
+   * that many commits, the search gives up and the abbreviated commit id is used as fallback, see
+   * {@link #always(boolean)}.
+   *
+   * There is no such option in git, it bounds the time spent on histories without any (matching) tags.
+   *
+   * @param maxSearchDepth the maximum number of commits to visit, 0 (or less) for no limit
+   * @return itself with the maximum search depth set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeCommand maxSearchDepth(@Nullable Integer maxSearchDepth) {
+    if (maxSearchDepth != null) {
+      this.maxSearchDepth = maxSearchDepth;
+      log.debug(String.format("max search depth = %s", maxSearchDepth));
+    }
+    return this;
+  }
+
+  /**
+   * Lets this command use the walks and the object reader of the given context,
+   * instead of opening its own ones for a single call.
+   *
+   * @param walkContext the {@link RevWalkContext} of the current run, owned (and closed) by the caller
+   * @return itself with the context set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeCommand walkContext(@Nullable RevWalkContext walkContext) {
+    this.walkContext = walkContext;
+    return this;
+  }
+
   /**
    * Apply all configuration options passed in with `config`.
    * If a setting is null, it will not be applied - so for abbrev for example, the default 7 would be used.
@@ -240,6 +354,9 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
       forceLongFormat(config.getForceLongFormat());
       tags(config.getTags());
       match(config.getMatch());
+      candidates(config.getCandidates());
+      maxSearchDepth(config.getMaxSearchDepth());
+      firstParent(config.isFirstParent());
     }
     return this;
   }
@@ -260,6 +377,60 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
     return this;
   }
 
+  /**
+   * Tells whether the submodules are checked for the <pre>--dirty</pre> mark, like <pre>--ignore-submodules=all</pre>
+   * when turned off.
+   *
+   * @param checkSubmodules {@code false} to ignore the submodules when checking if the working tree is dirty
+   * @return itself with the option set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeCommand checkSubmodules(boolean checkSubmodules) {
+    log.debug(String.format("checkSubmodules = %s", checkSubmodules));
+    this.checkSubmodulesFlag = checkSubmodules;
+    return this;
+  }
+
+  /**
+   * Sets the number of threads the work tree is scanned with for the <pre>--dirty</pre> mark, see {@link DirtyCheck}.
+   *
+   * @param threads the number of threads to scan the work tree with
+   * @return itself with the option set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeCommand workTreeScanThreads(int threads) {
+    log.debug(String.format("workTreeScanThreads = %s", threads));
+    this.workTreeScanThreads = threads;
+    return this;
+  }
+
+  /**
+   * Compares the files of the work tree with the index by their attributes only for the <pre>--dirty</pre> mark,
+   * without reading their content, see {@link DirtyCheck}.
+   *
+   * @param trustFileStat {@code true} to trust the file attributes recorded in the index
+   * @return itself with the option set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeCommand trustFileStat(boolean trustFileStat) {
+    log.debug(String.format("trustFileStat = %s", trustFileStat));
+    this.trustFileStatFlag = trustFileStat;
+    return this;
+  }
+
+  /**
+   * Takes whether the working tree is dirty from the given supplier for the <pre>--dirty</pre> mark, instead of
+   * checking it once more, e.g. when it was already checked for <pre>git.dirty</pre>.
+   *
+   * @param dirtyState tells whether the working tree is dirty
+   * @return itself with the option set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeCommand dirtyState(@NonNull SupplierEx<Boolean> dirtyState) {
+    this.dirtyState = dirtyState;
+    return this;
+  }
+
   /**
    * <pre>--match glob-pattern</pre>
    * Consider only those tags which match the given glob pattern.
@@ -278,14 +449,23 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
 
   @Override
   public DescribeResult call() throws GitAPIException {
+    if (walkContext != null) {
+      return call(walkContext);
+    }
+    try (RevWalkContext context = new RevWalkContext(repo)) {
+      return call(context);
+    }
+  }
+
+  private DescribeResult call(@NonNull RevWalkContext context) throws GitAPIException {
     // needed for abbrev id's calculation
-    ObjectReader objectReader = repo.newObjectReader();
+    ObjectReader objectReader = context.getObjectReader();
 
     // Handle path filter - find latest commit for the path if needed
     String actualEvaluateOnCommit = evaluateOnCommit;
     if (pathFilter != null && !pathFilter.isEmpty()) {
       try {
-        String latestCommitForPath = findLatestCommitForPath(pathFilter);
+        String latestCommitForPath = findLatestCommitForPath(context, pathFilter);
         if (latestCommitForPath != null && !latestCommitForPath.isEmpty()) {
           actualEvaluateOnCommit = latestCommitForPath;
           log.info("Using latest commit for path '" + pathFilter + "': " + latestCommitForPath);
@@ -297,46 +477,46 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
 
     // get tags
     String matchPattern = createMatchPattern();
-    Map<ObjectId, List<String>> tagObjectIdToName = jGitCommon.findTagObjectIds(repo, tagsFlag, matchPattern);
+    TagIndex tagIndex = jGitCommon.findTagObjectIds(context, tagsFlag, matchPattern);
 
     // get current commit
-    RevCommit evalCommit = findEvalCommitObjectId(actualEvaluateOnCommit, repo);
+    RevCommit evalCommit = findEvalCommitObjectId(actualEvaluateOnCommit, context);
     ObjectId evalCommitId = evalCommit.getId();
 
-    // check if dirty
-    boolean dirty = findDirtyState(repo);
+    // check if dirty, only needed for the dirty mark
+    boolean dirty = dirtyOption.isPresent() && findDirtyState(repo);
 
-    if (hasTags(evalCommit, tagObjectIdToName) && !forceLongFormat) {
-      String tagName = tagObjectIdToName.get(evalCommit).iterator().next();
+    if (hasTags(evalCommit, tagIndex) && !forceLongFormat) {
+      String tagName = tagIndex.nameOf(evalCommit, context.walk(), log);
       log.info(String.format("The commit we're on is a Tag ([%s]) and forceLongFormat == false, returning.", tagName));
 
       return new DescribeResult(tagName, dirty, dirtyOption);
     }
 
-    // get commits, up until the nearest tag
-    List<RevCommit> commits;
+    // find the nearest tag and how far away from it we are, in a single walk
+    DescribeWalk.ClosestTag closestTag;
     try {
-      commits = jGitCommon.findCommitsUntilSomeTag(repo, evalCommit, tagObjectIdToName);
-    } catch (Exception e) {
+      closestTag = new DescribeWalk(context, tagIndex, log)
+          .firstParent(firstParentFlag)
+          .maxCandidates(candidates)
+          .maxSearchDepth(maxSearchDepth)
+          .findClosestTag(evalCommit);
+    } catch (IOException e) {
       if (alwaysFlag) {
         // Show uniquely abbreviated commit object as fallback
-        commits = Collections.emptyList();
+        closestTag = null;
       } else {
-        throw e;
+        throw new JGitInternalException("Unable to find the closest tag", e);
       }
     }
 
     // if there is no tags or any tag is not on that branch then return generic describe
-    if (foundZeroTags(tagObjectIdToName) || commits.isEmpty()) {
+    if (closestTag == null) {
       return new DescribeResult(objectReader, evalCommitId, dirty, dirtyOption)
           .withCommitIdAbbrev(abbrev);
     }
 
-    // check how far away from a tag we are
-
-    int distance = jGitCommon.distanceBetween(repo, evalCommit, commits.get(0));
-    String tagName = tagObjectIdToName.get(commits.get(0)).iterator().next();
-    Pair<Integer, String> howFarFromWhichTag = Pair.of(distance, tagName);
+    Pair<Integer, String> howFarFromWhichTag = Pair.of(closestTag.getDistance(), closestTag.getName());
 
     // if it's null, no tag's were found etc, so let's return just the commit-id
     return createDescribeResult(objectReader, evalCommitId, dirty, howFarFromWhichTag);
@@ -377,22 +557,28 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
     }
   }
 
-  private static boolean foundZeroTags(@NonNull Map<ObjectId, List<String>> tags) {
-    return tags.isEmpty();
-  }
-
   // Visible for testing
   boolean findDirtyState(Repository repo) throws GitAPIException {
-    return JGitCommon.isRepositoryInDirtyState(repo, pathFilter);
+    if (dirtyState != null) {
+      try {
+        return dirtyState.get();
+      } catch (GitCommitIdExecutionException e) {
+        throw new JGitInternalException(e.getMessage(), e);
+      }
+    }
+    return JGitCommon.isRepositoryInDirtyState(repo, pathFilter, new DirtyCheck.Options()
+        .checkSubmodules(checkSubmodulesFlag)
+        .threads(workTreeScanThreads)
+        .trustFileStat(trustFileStatFlag));
   }
 
   // Visible for testing
-  static boolean hasTags(ObjectId headCommit, @NonNull Map<ObjectId, List<String>> tagObjectIdToName) {
-    return tagObjectIdToName.containsKey(headCommit);
+  static boolean hasTags(ObjectId headCommit, @NonNull TagIndex tagIndex) {
+    return tagIndex.contains(headCommit);
   }
 
-  RevCommit findEvalCommitObjectId(@NonNull String evaluateOnCommit, @NonNull Repository repo) throws RuntimeException {
-    return jGitCommon.findEvalCommitObjectId(evaluateOnCommit, repo);
+  RevCommit findEvalCommitObjectId(@NonNull String evaluateOnCommit, @NonNull RevWalkContext context) throws RuntimeException {
+    return jGitCommon.findEvalCommitObjectId(evaluateOnCommit, context);
   }
 
   /**
@@ -400,25 +586,14 @@ public class DescribeCommand extends GitCommand<DescribeResult> {
    * Returns the commit hash or null if no commits found.
    */
   @Nullable
-  private String findLatestCommitForPath(@NonNull String path) throws GitAPIException, IOException {
+  private String findLatestCommitForPath(@NonNull RevWalkContext context, @NonNull String path) throws IOException {
     ObjectId start = repo.resolve(evaluateOnCommit);
     if (start == null) {
       return null;
     }
 
-    try (Git git = Git.wrap(repo)) {
-      Iterable<RevCommit> commits = git.log()
-          .add(start)
-          .addPath(path)
-          .setMaxCount(1)
-          .call();
-
-      Iterator<RevCommit> it = commits.iterator();
-      if (it.hasNext()) {
-        return it.next().getName();
-      }
-    }
-    return null;
+    RevCommit latestCommit = jGitCommon.findLatestCommitForPath(context, start, path, firstParentFlag);
+    return latestCommit != null ? latestCommit.getName() : null;
   }
 
   private String createMatchPattern() {
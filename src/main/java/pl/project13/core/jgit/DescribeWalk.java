@@ -0,0 +1,488 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.revwalk.DateRevQueue;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import pl.project13.core.git.GitDescribeConfig;
+import pl.project13.core.log.LogInterface;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Finds the closest tag of a commit and its distance in a single history walk, the way
+ * <pre>git describe</pre> does.
+ *
+ * <p>Commits are visited from the newest to the oldest (by commit time). Every tagged commit that is
+ * visited becomes a candidate and gets a {@link RevFlag} of its own, which is handed down to its
+ * ancestors as the walk goes on. The depth of a candidate is the number of visited commits that don't
+ * carry its flag, i.e. the commits that are reachable from the start, but not from the candidate.
+ * Once enough candidates are found, the one with the lowest depth wins, and the walk only continues
+ * until all remaining commits are known to be reachable from the winner.</p>
+ *
+ * <p>Unlike git, the search also ends as soon as all queued commits are reachable from the best
+ * candidates found so far, even when fewer candidates than the limit were found. Nothing visited after
+ * that point can change the result, so the walk doesn't descend into the history of the tag, and its
+ * cost scales with the distance rather than with the size of the history.</p>
+ *
+ * <p>A commit without any tag in its history would be walked down to the root commits. So once the walk
+ * visited more commits than there are tagged commits without finding a candidate, it also checks whether
+ * any of the queued commits can still reach a tagged commit at all, see {@link CommitCutoff}.</p>
+ */
+public class DescribeWalk {
+
+  /**
+   * The number of candidates git considers by default, see <pre>git describe --candidates</pre>.
+   */
+  public static final int DEFAULT_MAX_CANDIDATES = 10;
+
+  private final RevWalkContext context;
+  private final TagIndex tagIndex;
+  private final LogInterface log;
+
+  private boolean firstParent = false;
+  private int maxCandidates = DEFAULT_MAX_CANDIDATES;
+  private int maxSearchDepth = 0;
+
+  private int visitedCommits;
+
+  public DescribeWalk(@NonNull RevWalkContext context, @NonNull TagIndex tagIndex, @NonNull LogInterface log) {
+    this.context = context;
+    this.tagIndex = tagIndex;
+    this.log = log;
+  }
+
+  /**
+   * <pre>--first-parent</pre>
+   *
+   * Only follow the first parent of merge commits, so that tags which were only merged in
+   * from other branches are not considered.
+   *
+   * @param firstParent set to {@code true} to only follow the first parent of merge commits
+   * @return itself with the option set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeWalk firstParent(boolean firstParent) {
+    this.firstParent = firstParent;
+    return this;
+  }
+
+  /**
+   * <pre>--candidates=N</pre>
+   *
+   * Consider up to {@code N} tags as candidates, instead of {@link #DEFAULT_MAX_CANDIDATES}. {@code 0} only
+   * finds tags pointing at the described commit itself. Every candidate needs a {@link RevFlag} of its own,
+   * so at most {@link GitDescribeConfig#MAX_CANDIDATES} are supported.
+   *
+   * @param maxCandidates the maximum number of candidates
+   * @return itself with the option set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeWalk maxCandidates(int maxCandidates) {
+    if (maxCandidates < 0 || maxCandidates > GitDescribeConfig.MAX_CANDIDATES) {
+      throw new IllegalArgumentException(String.format("The number of candidates must be between 0 and %s! (Was [%s])",
+          GitDescribeConfig.MAX_CANDIDATES, maxCandidates));
+    }
+    this.maxCandidates = maxCandidates;
+    return this;
+  }
+
+  /**
+   * Limits the number of commits visited while searching for candidates. When no tag was found
+   * within that many commits, the search gives up. When there was, the distance to the best
+   * candidate found so far is computed as usual.
+   *
+   * @param maxSearchDepth the maximum number of commits to visit, {@code 0} (or less) for no limit
+   * @return itself with the option set as specified by the argument to allow fluent configuration
+   */
+  @NonNull
+  public DescribeWalk maxSearchDepth(int maxSearchDepth) {
+    this.maxSearchDepth = maxSearchDepth;
+    return this;
+  }
+
+  /**
+   * Searches the closest tag of the given commit.
+   *
+   * @param startId the commit to describe
+   * @return the closest tag, or {@code null} if no indexed tag is reachable from the given commit
+   *         (within the bounds of the search)
+   * @throws IOException if the history could not be read
+   */
+  @Nullable
+  public ClosestTag findClosestTag(@NonNull AnyObjectId startId) throws IOException {
+    // describe, the closest tag name and the closest tag commit count all search for the same tag
+    List<Object> key = List.of(startId.copy(), tagIndex, firstParent, maxCandidates, maxSearchDepth);
+    Optional<ClosestTag> closestTag = context.getClosestTags().get(key);
+    if (closestTag == null) {
+      closestTag = Optional.ofNullable(search(startId));
+      context.getClosestTags().put(key, closestTag);
+    }
+    return closestTag.orElse(null);
+  }
+
+  @Nullable
+  private ClosestTag search(@NonNull AnyObjectId startId) throws IOException {
+    if (tagIndex.isEmpty()) {
+      return null;
+    }
+
+    RevWalk tagWalk = context.walk();
+    RevWalk walk = context.countingWalk();
+    RevCommit start = walk.parseCommit(startId);
+
+    String startName = tagIndex.nameOf(start, tagWalk, log);
+    if (startName != null) {
+      return new ClosestTag(start, startName, 0);
+    }
+    if (maxCandidates == 0) {
+      return null;
+    }
+
+    // registered as a root only, so that the next reset of the walk clears the flags of all commits visited below
+    walk.markStart(start);
+    Traversal traversal = new Traversal(walk);
+    try {
+      traversal.enqueue(start);
+
+      visitedCommits = 0;
+      RevCommit gaveUpOn = null;
+      RevCommit commit;
+      while ((commit = traversal.next()) != null) {
+        if (maxSearchDepth > 0 && visitedCommits >= maxSearchDepth) {
+          log.info(String.format("Stopped searching for tags after [%d] commits", visitedCommits));
+          if (traversal.candidates.isEmpty()) {
+            return null;
+          }
+          gaveUpOn = commit;
+          break;
+        }
+        visitedCommits++;
+
+        if (traversal.candidates.isEmpty() && !tagIndex.contains(commit)) {
+          if (traversal.cutoff == null && visitedCommits > tagIndex.size()) {
+            traversal.cutOff(context.cutoff(parseTaggedCommits(walk)));
+          }
+          if (traversal.cannotReachTag(commit)) {
+            log.debug(String.format("No tag can be reached anymore after visiting [%d] commits", visitedCommits));
+            return null;
+          }
+        }
+
+        if (tagIndex.contains(commit)) {
+          String name = tagIndex.nameOf(commit, tagWalk, log);
+          if (name != null) {
+            if (traversal.candidates.size() >= maxCandidates) {
+              gaveUpOn = commit;
+              break;
+            }
+            traversal.addCandidate(commit, name, visitedCommits - 1);
+          }
+        }
+
+        for (Candidate candidate : traversal.candidates) {
+          if (!commit.has(candidate.flag)) {
+            candidate.depth++;
+          }
+        }
+
+        traversal.expand(commit);
+
+        // everything left to visit is reachable from the best candidate(s), their depth won't change anymore
+        if (traversal.isSettled()) {
+          break;
+        }
+      }
+
+      if (traversal.candidates.isEmpty()) {
+        return null;
+      }
+
+      // stable, candidates of the same depth stay in the order they were found in
+      traversal.candidates.sort(Comparator.comparingInt(candidate -> candidate.depth));
+      Candidate best = traversal.candidates.get(0);
+
+      if (gaveUpOn != null) {
+        traversal.enqueue(gaveUpOn);
+      }
+      finishDepthComputation(traversal, best);
+
+      log.debug(String.format("Closest tag [%s] found after visiting [%d] commits, [%d] commits away",
+          best.name, visitedCommits, best.depth));
+      return new ClosestTag(best.commit, best.name, best.depth);
+    } finally {
+      traversal.disposeFlags();
+    }
+  }
+
+  // Visible for testing
+  int getVisitedCommits() {
+    return visitedCommits;
+  }
+
+  @NonNull
+  private List<RevCommit> parseTaggedCommits(@NonNull RevWalk walk) {
+    List<RevCommit> taggedCommits = new ArrayList<>(tagIndex.size());
+    for (int entry = 0; entry < tagIndex.size(); entry++) {
+      try {
+        taggedCommits.add(walk.parseCommit(tagIndex.getCommitId(entry)));
+      } catch (IOException e) {
+        // tags of trees or blobs (or of missing commits) are never reached by the walk anyway
+      }
+    }
+    return taggedCommits;
+  }
+
+  /**
+   * Keeps walking until all remaining commits are reachable from the best candidate,
+   * counting the commits that aren't.
+   */
+  private void finishDepthComputation(@NonNull Traversal traversal, @NonNull Candidate best) throws IOException {
+    RevCommit commit;
+    while ((commit = traversal.next()) != null) {
+      if (commit.has(best.flag)) {
+        if (best.missing == 0) {
+          break;
+        }
+      } else {
+        best.depth++;
+      }
+      traversal.expand(commit);
+    }
+  }
+
+  /**
+   * The state of a single search: the queue of commits to visit, ordered by commit time, and the flags
+   * marking which commits were seen, are still queued, and are reachable from which candidate.
+   */
+  private class Traversal {
+    private final RevWalk walk;
+    private final DateRevQueue queue = new DateRevQueue();
+    private final RevFlag seen;
+    private final RevFlag queued;
+    private final List<Candidate> candidates = new ArrayList<>();
+    private int queueSize;
+    private CommitCutoff cutoff;
+    /**
+     * The number of queued commits that might reach a tagged commit, only counted once there is a cutoff.
+     */
+    private int queuedMayReachTag;
+
+    private Traversal(@NonNull RevWalk walk) {
+      this.walk = walk;
+      this.seen = walk.newFlag("DESCRIBE_SEEN");
+      this.queued = walk.newFlag("DESCRIBE_QUEUED");
+    }
+
+    private void enqueue(@NonNull RevCommit commit) {
+      commit.add(seen);
+      commit.add(queued);
+      queue.add(commit);
+      queueSize++;
+      if (cutoff != null && mayReachTag(commit)) {
+        queuedMayReachTag++;
+      }
+      for (Candidate candidate : candidates) {
+        if (!commit.has(candidate.flag)) {
+          candidate.missing++;
+        }
+      }
+    }
+
+    @Nullable
+    private RevCommit next() {
+      RevCommit commit = queue.next();
+      if (commit != null) {
+        commit.remove(queued);
+        queueSize--;
+        if (cutoff != null && mayReachTag(commit)) {
+          queuedMayReachTag--;
+        }
+        for (Candidate candidate : candidates) {
+          if (!commit.has(candidate.flag)) {
+            candidate.missing--;
+          }
+        }
+      }
+      return commit;
+    }
+
+    /**
+     * Starts counting the queued commits that might still reach a tagged commit.
+     */
+    private void cutOff(@NonNull CommitCutoff cutoff) {
+      this.cutoff = cutoff;
+      // re-queued in the order they come out, which keeps the order of commits with the same commit time
+      List<RevCommit> queuedCommits = new ArrayList<>(queueSize);
+      RevCommit commit;
+      while ((commit = queue.next()) != null) {
+        queuedCommits.add(commit);
+      }
+      for (RevCommit queuedCommit : queuedCommits) {
+        queue.add(queuedCommit);
+        if (mayReachTag(queuedCommit)) {
+          queuedMayReachTag++;
+        }
+      }
+    }
+
+    private boolean mayReachTag(@NonNull RevCommit commit) {
+      return tagIndex.contains(commit) || !cutoff.cannotReach(commit);
+    }
+
+    /**
+     * @return {@code true} if neither the given (just visited) commit nor any of the queued commits
+     *         can reach a tagged commit
+     */
+    private boolean cannotReachTag(@NonNull RevCommit commit) {
+      return cutoff != null && queuedMayReachTag == 0 && cutoff.cannotReach(commit);
+    }
+
+    private void addCandidate(@NonNull RevCommit commit, @NonNull String name, int depth) {
+      Candidate candidate = new Candidate(commit, name, depth, walk.newFlag("DESCRIBE_CANDIDATE_" + candidates.size()));
+      commit.add(candidate.flag);
+      // the flag is new, none of the queued commits can carry it yet
+      candidate.missing = queueSize;
+      candidates.add(candidate);
+    }
+
+    /**
+     * Queues the parents of the given commit and hands its candidate flags down to them.
+     */
+    private void expand(@NonNull RevCommit commit) throws IOException {
+      for (RevCommit parent : parentsOf(commit)) {
+        walk.parseHeaders(parent);
+        if (!parent.has(seen)) {
+          enqueue(parent);
+        }
+        for (Candidate candidate : candidates) {
+          if (commit.has(candidate.flag) && !parent.has(candidate.flag)) {
+            parent.add(candidate.flag);
+            if (parent.has(queued)) {
+              candidate.missing--;
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * A commit that is visited later on can't be closer than the candidates of the lowest depth, and
+     * their depth only grows by commits not reachable from them. So once every queued commit (and by
+     * that everything behind them) is reachable from all of them, the search is over.
+     */
+    private boolean isSettled() {
+      int bestDepth = Integer.MAX_VALUE;
+      for (Candidate candidate : candidates) {
+        bestDepth = Math.min(bestDepth, candidate.depth);
+      }
+      for (Candidate candidate : candidates) {
+        if (candidate.depth == bestDepth && candidate.missing > 0) {
+          return false;
+        }
+      }
+      return !candidates.isEmpty();
+    }
+
+    private void disposeFlags() {
+      walk.disposeFlag(seen);
+      walk.disposeFlag(queued);
+      for (Candidate candidate : candidates) {
+        walk.disposeFlag(candidate.flag);
+      }
+    }
+  }
+
+  @NonNull
+  private RevCommit[] parentsOf(@NonNull RevCommit commit) {
+    if (firstParent && commit.getParentCount() > 1) {
+      return new RevCommit[]{commit.getParent(0)};
+    }
+    return commit.getParents();
+  }
+
+  private static class Candidate {
+    private final RevCommit commit;
+    private final String name;
+    private final RevFlag flag;
+    private int depth;
+    /**
+     * The number of queued commits not (yet) known to be reachable from this candidate.
+     */
+    private int missing;
+
+    private Candidate(RevCommit commit, String name, int depth, RevFlag flag) {
+      this.commit = commit;
+      this.name = name;
+      this.depth = depth;
+      this.flag = flag;
+    }
+  }
+
+  /**
+   * The tag that describes a commit best, together with its distance.
+   */
+  public static class ClosestTag {
+    private final RevCommit commit;
+    private final String name;
+    private final int distance;
+
+    public ClosestTag(@NonNull RevCommit commit, @NonNull String name, int distance) {
+      this.commit = commit;
+      this.name = name;
+      this.distance = distance;
+    }
+
+    /**
+     * @return the tagged commit
+     */
+    @NonNull
+    public RevCommit getCommit() {
+      return commit;
+    }
+
+    /**
+     * @return the name of the tag
+     */
+    @NonNull
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the number of commits that are reachable from the described commit, but not from the tag
+     */
+    public int getDistance() {
+      return distance;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("ClosestTag(%s, %d)", name, distance);
+    }
+  }
+}
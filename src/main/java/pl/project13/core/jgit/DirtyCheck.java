@@ -0,0 +1,461 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator.MetadataDiff;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.SkipWorkTreeFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Tells whether the work tree or the index differ from {@code HEAD}, the way <pre>git describe --dirty</pre>
+ * sees it: untracked files don't count.
+ *
+ * <p>Unlike <pre>git status</pre> (and JGit's {@link IndexDiff} behind it), which collect every added,
+ * changed, removed, missing, modified, conflicting and untracked file, this check stops at the first
+ * tracked file that differs. It never enters a directory that is neither in {@code HEAD} nor in the index,
+ * so untracked and ignored directories (build output, dependencies, ...) are not even listed. The files
+ * of the work tree are compared with the index by their file attributes first, their content is only
+ * read when these don't tell.</p>
+ *
+ * <p>Several paths, e.g. the modules of a build, can be checked in the same walk, see
+ * {@link #findDirtyPaths(Collection)}.</p>
+ *
+ * <p>On large checkouts, comparing the files with the index can be spread over several threads. The index
+ * is then compared with {@code HEAD} first, and the work tree is scanned in ranges of the index, which
+ * stat the files (and read the ones whose attributes don't tell) concurrently.</p>
+ *
+ * <p>The check can also be told to trust the file attributes recorded in the index: a file then counts as
+ * modified as soon as its mode, size or modification time differ, and its content is never read. A file
+ * that got touched without being changed counts as modified, and one changed within the same timestamp as
+ * the index was written ("racily clean") counts as clean.</p>
+ *
+ * <p>Submodules are checked like <pre>git status</pre> does (following their <pre>ignore</pre> setting),
+ * unless the check is told to skip them, like <pre>--ignore-submodules=all</pre>.</p>
+ */
+public class DirtyCheck {
+
+  private static final int HEAD = 0;
+  private static final int INDEX = 1;
+  private static final int WORK_TREE = 2;
+
+  /**
+   * Below this number of index entries, the work tree is always scanned on the calling thread.
+   */
+  static final int MIN_PARALLEL_ENTRIES = 10_000;
+
+  private final Repository repository;
+  private final boolean checkSubmodules;
+  private final int threads;
+  private final boolean trustFileStat;
+  private final int minParallelEntries;
+
+  /**
+   * Checks the submodules too, on the calling thread, reading the content of the files whose attributes don't tell.
+   *
+   * @param repository the repository to check, with a work tree
+   */
+  public DirtyCheck(@NonNull Repository repository) {
+    this(repository, new Options());
+  }
+
+  /**
+   * @param repository the repository to check, with a work tree
+   * @param options how to check it
+   */
+  public DirtyCheck(@NonNull Repository repository, @NonNull Options options) {
+    this.repository = repository;
+    this.checkSubmodules = options.checkSubmodules;
+    this.threads = options.threads;
+    this.trustFileStat = options.trustFileStat;
+    this.minParallelEntries = options.minParallelEntries;
+  }
+
+  /**
+   * @param pathFilter only check this path (relative to the work tree), {@code null} to check everything
+   * @return {@code true} if any tracked file differs between {@code HEAD}, the index and the work tree
+   * @throws IOException if the index or the files can't be read
+   */
+  public boolean isDirty(@Nullable String pathFilter) throws IOException {
+    return !findDirtyPaths(Collections.singletonList(pathFilter != null ? pathFilter : "")).isEmpty();
+  }
+
+  /**
+   * Checks several paths at once, e.g. the modules of a build, in a single walk over the index and the
+   * work tree. A file that differs counts for every given path that contains it, and the files of paths
+   * already found to be dirty are not compared any more.
+   *
+   * @param paths the paths to check (relative to the work tree), {@code ""} or {@code "."} for everything
+   * @return the given paths that contain a tracked file which differs between {@code HEAD}, the index
+   *         and the work tree
+   * @throws IOException if the index or the files can't be read
+   */
+  @NonNull
+  public Set<String> findDirtyPaths(@NonNull Collection<String> paths) throws IOException {
+    CheckedPaths checkedPaths = new CheckedPaths(paths);
+    Set<String> dirty = ConcurrentHashMap.newKeySet();
+    if (!checkedPaths.isEmpty()) {
+      DirCache index = repository.readDirCache();
+      if (threads < 2 || index.getEntryCount() < minParallelEntries) {
+        findDirtyPaths(index, checkedPaths, dirty, true);
+      } else {
+        // the index against HEAD first, which doesn't touch the work tree
+        findDirtyPaths(index, checkedPaths, dirty, false);
+        if (!checkedPaths.allDirty(dirty)) {
+          findWorkTreeDirtyPaths(index, checkedPaths, dirty);
+        }
+      }
+    }
+    return checkedPaths.originalsOf(dirty);
+  }
+
+  private void findDirtyPaths(@NonNull DirCache index, @NonNull CheckedPaths checkedPaths, @NonNull Set<String> dirty,
+      boolean withWorkTree) throws IOException {
+    try (ObjectReader reader = repository.newObjectReader();
+         TreeWalk walk = new TreeWalk(repository, reader)) {
+      ObjectId headTree = repository.resolve(Constants.HEAD + "^{tree}");
+      if (headTree != null) {
+        walk.addTree(headTree);
+      } else {
+        walk.addTree(new EmptyTreeIterator());
+      }
+      walk.addTree(new DirCacheIterator(index));
+      if (withWorkTree) {
+        FileTreeIterator workTree = new FileTreeIterator(repository);
+        walk.addTree(workTree);
+        workTree.setDirCacheIterator(walk, INDEX);
+      }
+
+      TreeFilter filter = AndTreeFilter.create(new SkipWorkTreeFilter(INDEX), new TrackedFilter());
+      if (!checkedPaths.containsEverything()) {
+        filter = AndTreeFilter.create(checkedPaths.filter(), filter);
+      }
+      walk.setFilter(filter);
+      walk.setRecursive(true);
+
+      while (walk.next()) {
+        List<String> owners = checkedPaths.cleanOwnersOf(walk.getPathString(), dirty);
+        if (!owners.isEmpty() && isDirty(walk, withWorkTree, reader)) {
+          dirty.addAll(owners);
+          if (checkedPaths.allDirty(dirty)) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if the current entry of the walk differs between {@code HEAD}, the index and
+   *         (if walked) the work tree
+   */
+  private boolean isDirty(@NonNull TreeWalk walk, boolean withWorkTree, @NonNull ObjectReader reader) throws IOException {
+    if (walk.getRawMode(HEAD) == FileMode.TYPE_GITLINK || walk.getRawMode(INDEX) == FileMode.TYPE_GITLINK) {
+      return checkSubmodules && isSubmoduleDirty(walk.getPathString());
+    }
+    DirCacheIterator indexEntry = walk.getTree(INDEX, DirCacheIterator.class);
+    if (indexEntry == null) {
+      // removed from the index
+      return true;
+    }
+    DirCacheEntry entry = indexEntry.getDirCacheEntry();
+    if (entry.getStage() != DirCacheEntry.STAGE_0) {
+      // conflicting
+      return true;
+    }
+    if (walk.getRawMode(HEAD) != walk.getRawMode(INDEX) || !walk.idEqual(HEAD, INDEX)) {
+      // added or changed in the index
+      return true;
+    }
+    return withWorkTree && isModified(walk, WORK_TREE, entry, reader);
+  }
+
+  /**
+   * Compares the files of the index with the work tree on several threads, each taking a range of the
+   * index. All of them stop as soon as all paths are found to be dirty.
+   */
+  private void findWorkTreeDirtyPaths(@NonNull DirCache index, @NonNull CheckedPaths checkedPaths,
+      @NonNull Set<String> dirty) throws IOException {
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < index.getEntryCount(); i++) {
+      DirCacheEntry entry = index.getEntry(i);
+      if (!entry.isSkipWorkTree() && entry.getRawMode() != FileMode.TYPE_GITLINK
+          && !checkedPaths.cleanOwnersOf(entry.getPathString(), dirty).isEmpty()) {
+        paths.add(entry.getPathString());
+      }
+    }
+    // the iterators of the threads share the index, its tree has to be built before
+    index.getCacheTree(true);
+
+    // more ranges than threads, so that the threads done early take over from the others
+    int ranges = threads * 4;
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < ranges; i++) {
+      List<String> range = paths.subList(paths.size() * i / ranges, paths.size() * (i + 1) / ranges);
+      if (!range.isEmpty()) {
+        tasks.add(() -> {
+          scanWorkTree(index, range, checkedPaths, dirty);
+          return null;
+        });
+      }
+    }
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      for (Future<Void> result : pool.invokeAll(tasks)) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private void scanWorkTree(@NonNull DirCache index, @NonNull List<String> paths, @NonNull CheckedPaths checkedPaths,
+      @NonNull Set<String> dirty) throws IOException {
+    try (ObjectReader reader = repository.newObjectReader();
+         TreeWalk walk = new TreeWalk(repository, reader)) {
+      walk.addTree(new DirCacheIterator(index));
+      FileTreeIterator workTree = new FileTreeIterator(repository);
+      walk.addTree(workTree);
+      workTree.setDirCacheIterator(walk, 0);
+      walk.setFilter(PathFilterGroup.createFromStrings(paths));
+      walk.setRecursive(true);
+      while (!checkedPaths.allDirty(dirty) && walk.next()) {
+        DirCacheIterator indexEntry = walk.getTree(0, DirCacheIterator.class);
+        if (indexEntry == null) {
+          continue;
+        }
+        List<String> owners = checkedPaths.cleanOwnersOf(walk.getPathString(), dirty);
+        if (!owners.isEmpty() && isModified(walk, 1, indexEntry.getDirCacheEntry(), reader)) {
+          dirty.addAll(owners);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if the file of the index entry is missing or modified in the work tree
+   */
+  private boolean isModified(@NonNull TreeWalk walk, int workTreeIndex, @NonNull DirCacheEntry entry,
+      @NonNull ObjectReader reader) throws IOException {
+    WorkingTreeIterator workTreeEntry = walk.getTree(workTreeIndex, WorkingTreeIterator.class);
+    if (workTreeEntry == null) {
+      return true;
+    }
+    if (trustFileStat) {
+      // a racily clean entry has the same attributes as its file, whatever the content
+      MetadataDiff diff = workTreeEntry.compareMetadata(entry);
+      return diff != MetadataDiff.EQUAL && diff != MetadataDiff.SMUDGED;
+    }
+    return workTreeEntry.isModified(entry, true, reader);
+  }
+
+  /**
+   * Leaves the submodules to {@link IndexDiff}, which opens their repositories and follows their
+   * <pre>ignore</pre> setting.
+   */
+  private boolean isSubmoduleDirty(@NonNull String path) throws IOException {
+    IndexDiff diff = new IndexDiff(repository, Constants.HEAD, new FileTreeIterator(repository));
+    diff.setFilter(PathFilter.create(path));
+    diff.diff();
+    return !(diff.getAdded().isEmpty()
+        && diff.getChanged().isEmpty()
+        && diff.getRemoved().isEmpty()
+        && diff.getMissing().isEmpty()
+        && diff.getModified().isEmpty()
+        && diff.getConflicting().isEmpty());
+  }
+
+  /**
+   * How a {@link DirtyCheck} compares the work tree and the index with {@code HEAD}.
+   */
+  public static final class Options {
+    private boolean checkSubmodules = true;
+    private int threads = 1;
+    private boolean trustFileStat = false;
+    private int minParallelEntries = MIN_PARALLEL_ENTRIES;
+
+    /**
+     * @param checkSubmodules {@code true} to also check the submodules (the default), {@code false} to ignore them
+     * @return these options
+     */
+    @NonNull
+    public Options checkSubmodules(boolean checkSubmodules) {
+      this.checkSubmodules = checkSubmodules;
+      return this;
+    }
+
+    /**
+     * @param threads the number of threads to scan the work tree with, {@code 1} by default
+     * @return these options
+     */
+    @NonNull
+    public Options threads(int threads) {
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * @param trustFileStat {@code true} to compare the files with the index by their attributes only,
+     *                      {@code false} (the default) to read their content when the attributes don't tell
+     * @return these options
+     */
+    @NonNull
+    public Options trustFileStat(boolean trustFileStat) {
+      this.trustFileStat = trustFileStat;
+      return this;
+    }
+
+    // Visible for testing
+    @NonNull
+    Options minParallelEntries(int minParallelEntries) {
+      this.minParallelEntries = minParallelEntries;
+      return this;
+    }
+  }
+
+  /**
+   * The paths to check, by their normalized form: without trailing slashes, and {@code ""} for everything.
+   */
+  private static class CheckedPaths {
+    private final Map<String, List<String>> originals = new LinkedHashMap<>();
+
+    CheckedPaths(@NonNull Collection<String> paths) {
+      for (String path : paths) {
+        originals.computeIfAbsent(normalize(path), p -> new ArrayList<>()).add(path);
+      }
+    }
+
+    private static String normalize(@NonNull String path) {
+      String normalized = path;
+      while (normalized.endsWith("/")) {
+        normalized = normalized.substring(0, normalized.length() - 1);
+      }
+      return normalized.equals(".") ? "" : normalized;
+    }
+
+    boolean isEmpty() {
+      return originals.isEmpty();
+    }
+
+    boolean containsEverything() {
+      return originals.containsKey("");
+    }
+
+    @NonNull
+    TreeFilter filter() {
+      return PathFilterGroup.createFromStrings(originals.keySet());
+    }
+
+    boolean allDirty(@NonNull Set<String> dirty) {
+      return dirty.size() == originals.size();
+    }
+
+    /**
+     * @return the checked paths that contain the file and are not known to be dirty yet
+     */
+    @NonNull
+    List<String> cleanOwnersOf(@NonNull String file, @NonNull Set<String> dirty) {
+      List<String> owners = new ArrayList<>(1);
+      String path = file;
+      while (true) {
+        if (originals.containsKey(path) && !dirty.contains(path)) {
+          owners.add(path);
+        }
+        if (path.isEmpty()) {
+          return owners;
+        }
+        int slash = path.lastIndexOf('/');
+        path = slash >= 0 ? path.substring(0, slash) : "";
+      }
+    }
+
+    @NonNull
+    Set<String> originalsOf(@NonNull Set<String> dirty) {
+      Set<String> result = new LinkedHashSet<>();
+      for (Map.Entry<String, List<String>> entry : originals.entrySet()) {
+        if (dirty.contains(entry.getKey())) {
+          result.addAll(entry.getValue());
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Skips everything that is neither in {@code HEAD} nor in the index, without entering such directories.
+   */
+  private static class TrackedFilter extends TreeFilter {
+    @Override
+    public boolean include(TreeWalk walker) {
+      return walker.getRawMode(HEAD) != 0 || walker.getRawMode(INDEX) != 0;
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+      return false;
+    }
+
+    @Override
+    public TreeFilter clone() {
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return "TRACKED";
+    }
+  }
+}
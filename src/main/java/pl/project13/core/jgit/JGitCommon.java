@@ -19,29 +19,31 @@ package pl.project13.core.jgit;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.RevWalkUtils;
 
 import org.jspecify.annotations.NonNull;
-import pl.project13.core.jgit.dummy.DatedRevTag;
+import org.jspecify.annotations.Nullable;
 
 import pl.project13.core.git.GitDescribeConfig;
+import pl.project13.core.jgit.dummy.DatedRevTag;
 import pl.project13.core.log.LogInterface;
-import pl.project13.core.util.Pair;
 
 public class JGitCommon {
 
+  // the history below a commit never changes, the entries of a repository go with its JGitRepositoryCache entry
+  private static final Object SHARED_LATEST_COMMITS = new Object();
+
   private final LogInterface log;
 
   public JGitCommon(LogInterface log) {
@@ -49,75 +51,81 @@ public class JGitCommon {
   }
 
   public Collection<String> getTags(Repository repo, final ObjectId objectId) throws GitAPIException {
-    try (Git git = Git.wrap(repo)) {
-      try (RevWalk walk = new RevWalk(repo)) {
-        Collection<String> tags = getTags(git, objectId, walk);
-        walk.dispose();
-        return tags;
-      }
+    try (RevWalkContext context = new RevWalkContext(repo)) {
+      return getTags(context, objectId);
     }
   }
 
-  private Collection<String> getTags(final Git git, final ObjectId objectId, final RevWalk finalWalk) throws GitAPIException {
-    return git.tagList().call()
-            .stream()
-            .filter(tagRef -> {
-              try {
-                final RevCommit tagCommit = finalWalk.parseCommit(tagRef.getObjectId());
-                final RevCommit objectCommit = finalWalk.parseCommit(objectId);
-                if (finalWalk.isMergedInto(objectCommit, tagCommit)) {
-                  return true;
+  public Collection<String> getTags(@NonNull RevWalkContext context, final ObjectId objectId) throws GitAPIException {
+    List<RefSnapshot.TagRef> tagRefs = getRefSnapshot(context).getTags();
+    try (ContainsWalk containsWalk = new ContainsWalk(context, objectId)) {
+      return tagRefs
+              .stream()
+              .filter(tagRef -> {
+                try {
+                  return containsWalk.isContainedIn(tagRef.getPeeledObjectId());
+                } catch (Exception ignored) {
+                  log.debug(String.format("Failed while getTags [%s] -- ", tagRef));
                 }
-              } catch (Exception ignored) {
-                log.debug(String.format("Failed while getTags [%s] -- ", tagRef));
-              }
-              return false;
-            })
-            .map(tagRef -> trimFullTagName(tagRef.getName()))
-            .collect(Collectors.toList());
+                return false;
+              })
+              .map(RefSnapshot.TagRef::getShortName)
+              .collect(Collectors.toList());
+    } catch (IOException e) {
+      log.debug(String.format("Failed while getTags [%s] -- ", objectId));
+      return new ArrayList<>();
+    }
   }
 
   public Collection<String> getTag(Repository repo, final ObjectId objectId) throws GitAPIException {
-    try (Git git = Git.wrap(repo)) {
-      Collection<String> tags = getTagsOnObjectId(git, objectId);
-      return tags;
+    try (RevWalkContext context = new RevWalkContext(repo)) {
+      return getTag(context, objectId);
     }
   }
 
-  private Collection<String> getTagsOnObjectId(final Git git, final ObjectId objectId) throws GitAPIException {
-    return git.tagList().call()
+  public Collection<String> getTag(@NonNull RevWalkContext context, final ObjectId objectId) throws GitAPIException {
+    return getRefSnapshot(context).getTagsPointingAt(objectId)
             .stream()
-            .filter(tagRef -> {
-              try {
-                if (objectId.name().equals(tagRef.getObjectId().name())) {
-                  return true;
-                }
-              } catch (Exception ignored) {
-                log.debug(String.format("Failed while getTagOnObjectId [%s] -- ", tagRef));
-              }
-              return false;
-            })
-            .map(tagRef -> trimFullTagName(tagRef.getName()))
+            .map(RefSnapshot.TagRef::getShortName)
             .collect(Collectors.toList());
   }
 
+  private RefSnapshot getRefSnapshot(@NonNull RevWalkContext context) {
+    try {
+      // same as Git.tagList() does when the refs can't be read
+      return context.getRefSnapshot();
+    } catch (IOException e) {
+      throw new JGitInternalException(e.getMessage(), e);
+    }
+  }
+
   public String getClosestTagName(@NonNull String evaluateOnCommit, @NonNull Repository repo, GitDescribeConfig gitDescribe) {
+    try (RevWalkContext context = new RevWalkContext(repo)) {
+      return getClosestTagName(evaluateOnCommit, context, gitDescribe);
+    }
+  }
+
+  public String getClosestTagName(@NonNull String evaluateOnCommit, @NonNull RevWalkContext context, GitDescribeConfig gitDescribe) {
     // TODO: Why does some tests fail when it gets headCommit from JGitprovider?
-    RevCommit headCommit = findEvalCommitObjectId(evaluateOnCommit, repo);
-    Pair<RevCommit, String> pair = getClosestRevCommit(repo, headCommit, gitDescribe);
-    return pair.second;
+    RevCommit headCommit = findEvalCommitObjectId(evaluateOnCommit, context);
+    DescribeWalk.ClosestTag closestTag = findClosestTag(context, headCommit, gitDescribe);
+    return closestTag != null ? closestTag.getName() : "";
   }
 
   public String getClosestTagCommitCount(@NonNull String evaluateOnCommit, @NonNull Repository repo, GitDescribeConfig gitDescribe) {
+    try (RevWalkContext context = new RevWalkContext(repo)) {
+      return getClosestTagCommitCount(evaluateOnCommit, context, gitDescribe);
+    }
+  }
+
+  public String getClosestTagCommitCount(@NonNull String evaluateOnCommit, @NonNull RevWalkContext context, GitDescribeConfig gitDescribe) {
     // TODO: Why does some tests fail when it gets headCommit from JGitprovider?
-    RevCommit headCommit = findEvalCommitObjectId(evaluateOnCommit, repo);
-    Pair<RevCommit, String> pair = getClosestRevCommit(repo, headCommit, gitDescribe);
-    RevCommit revCommit = pair.first;
-    int distance = distanceBetween(repo, headCommit, revCommit);
-    return String.valueOf(distance);
+    RevCommit headCommit = findEvalCommitObjectId(evaluateOnCommit, context);
+    DescribeWalk.ClosestTag closestTag = findClosestTag(context, headCommit, gitDescribe);
+    return closestTag != null ? String.valueOf(closestTag.getDistance()) : "";
   }
 
-  private Pair<RevCommit, String> getClosestRevCommit(@NonNull Repository repo, RevCommit headCommit, GitDescribeConfig gitDescribe) {
+  private DescribeWalk.ClosestTag findClosestTag(@NonNull RevWalkContext context, RevCommit headCommit, GitDescribeConfig gitDescribe) {
     boolean includeLightweightTags = false;
     String matchPattern = ".*";
     if (gitDescribe != null) {
@@ -126,16 +134,19 @@ public class JGitCommon {
         matchPattern = createMatchPattern(gitDescribe.getMatch());
       }
     }
-    Map<ObjectId, List<String>> tagObjectIdToName = findTagObjectIds(repo, includeLightweightTags, matchPattern);
-    if (tagObjectIdToName.containsKey(headCommit)) {
-      String tagName = tagObjectIdToName.get(headCommit).iterator().next();
-      return Pair.of(headCommit, tagName);
+    TagIndex tagIndex = findTagObjectIds(context, includeLightweightTags, matchPattern);
+    try {
+      DescribeWalk describeWalk = new DescribeWalk(context, tagIndex, log);
+      if (gitDescribe != null) {
+        describeWalk
+            .maxCandidates(gitDescribe.getCandidates())
+            .maxSearchDepth(gitDescribe.getMaxSearchDepth())
+            .firstParent(gitDescribe.isFirstParent());
+      }
+      return describeWalk.findClosestTag(headCommit);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to find the closest tag of " + headCommit.getName(), e);
     }
-    List<RevCommit> commits = findCommitsUntilSomeTag(repo, headCommit, tagObjectIdToName);
-    RevCommit revCommit = commits.get(0);
-    String tagName = tagObjectIdToName.get(revCommit).iterator().next();
-
-    return Pair.of(revCommit, tagName);
   }
 
   protected String createMatchPattern(String pattern) {
@@ -144,6 +155,21 @@ public class JGitCommon {
             "\\E$";
   }
 
+  protected TagIndex findTagObjectIds(@NonNull RevWalkContext context, boolean includeLightweightTags, String matchPattern) {
+    try {
+      TagIndex tagIndex = context.getTagIndex(includeLightweightTags, matchPattern, log);
+      log.debug(String.format("Indexed [%d] tagged commits", tagIndex.size()));
+      return tagIndex;
+    } catch (Exception e) {
+      log.error("Unable to locate tags", e);
+    }
+    return TagIndex.of(Collections.emptyList(), includeLightweightTags, Pattern.compile(matchPattern), log);
+  }
+
+  /**
+   * @deprecated use {@link #findTagObjectIds(RevWalkContext, boolean, String)}, which indexes the tags in a {@link TagIndex}
+   */
+  @Deprecated
   protected Map<ObjectId, List<String>> findTagObjectIds(@NonNull Repository repo, boolean includeLightweightTags, String matchPattern) {
     Map<ObjectId, List<DatedRevTag>> commitIdsToTags = getCommitIdsToTags(repo, includeLightweightTags, matchPattern);
     Map<ObjectId, List<String>> commitIdsToTagNames = transformRevTagsMapToDateSortedTagNames(commitIdsToTags);
@@ -152,112 +178,88 @@ public class JGitCommon {
     return commitIdsToTagNames;
   }
 
-  protected RevCommit findEvalCommitObjectId(@NonNull String evaluateOnCommit, @NonNull Repository repo) throws RuntimeException {
-    try {
-      ObjectId evalCommitId = repo.resolve(evaluateOnCommit);
-
-      try (RevWalk walk = new RevWalk(repo)) {
-        RevCommit evalCommit = walk.parseCommit(evalCommitId);
-        walk.dispose();
-
-        log.debug(String.format("evalCommit is [%s]", evalCommit.getName()));
-        return evalCommit;
-      }
-    } catch (IOException ex) {
-      throw new RuntimeException("Unable to obtain " + evaluateOnCommit + " commit!", ex);
-    }
-  }
-
+  /**
+   * @deprecated use {@link #findTagObjectIds(RevWalkContext, boolean, String)}, which indexes the tags in a {@link TagIndex}
+   */
+  @Deprecated
   protected Map<ObjectId, List<DatedRevTag>> getCommitIdsToTags(@NonNull Repository repo, boolean includeLightweightTags, String matchPattern) {
     Map<ObjectId, List<DatedRevTag>> commitIdsToTags = new HashMap<>();
 
-    try (RevWalk walk = new RevWalk(repo)) {
-      walk.markStart(walk.parseCommit(repo.resolve("HEAD")));
-
-      List<Ref> tagRefs = Git.wrap(repo).tagList().call();
-      Pattern regex = Pattern.compile(matchPattern);
-      log.debug(String.format("Tag refs [%s]", tagRefs));
-
-      for (Ref tagRef : tagRefs) {
-        walk.reset();
-        String name = tagRef.getName();
-        if (!regex.matcher(name).matches()) {
-          log.info(String.format("Skipping tagRef with name [%s] as it doesn't match [%s]", name, matchPattern));
-          continue;
-        }
-        ObjectId resolvedCommitId = repo.resolve(name);
-
-        // TODO that's a bit of a hack...
-        try {
-          final RevTag revTag = walk.parseTag(resolvedCommitId);
-          ObjectId taggedCommitId = revTag.getObject().getId();
-          log.debug(String.format("Resolved tag [%s] [%s], points at [%s] ", revTag.getTagName(), revTag.getTaggerIdent(), taggedCommitId));
-
-          // sometimes a tag, may point to another tag, so we need to unpack it
-          while (isTagId(taggedCommitId)) {
-            taggedCommitId = walk.parseTag(taggedCommitId).getObject().getId();
+    try (RevWalkContext context = new RevWalkContext(repo);
+         RevWalk walk = new RevWalk(context.getObjectReader())) {
+      TagIndex tagIndex = findTagObjectIds(context, includeLightweightTags, matchPattern);
+      for (int entry = 0; entry < tagIndex.size(); entry++) {
+        ObjectId commitId = tagIndex.getCommitId(entry);
+        List<DatedRevTag> datedRevTags = new ArrayList<>();
+        for (RefSnapshot.TagRef tagRef : tagIndex.getTags(entry)) {
+          if (!tagRef.isAnnotated()) {
+            datedRevTags.add(new DatedRevTag(commitId, tagRef.getName()));
+            continue;
           }
-
-          if (commitIdsToTags.containsKey(taggedCommitId)) {
-            commitIdsToTags.get(taggedCommitId).add(new DatedRevTag(revTag));
-          } else {
-            commitIdsToTags.put(taggedCommitId, new ArrayList<>(Collections.singletonList(new DatedRevTag(revTag))));
-          }
-
-        } catch (IncorrectObjectTypeException ex) {
-          // it's an lightweight tag! (yeah, really)
-          if (includeLightweightTags) {
-            // --tags means "include lightweight tags"
-            log.debug(String.format("Including lightweight tag [%s]", name));
-
-            DatedRevTag datedRevTag = new DatedRevTag(resolvedCommitId, name);
-
-            if (commitIdsToTags.containsKey(resolvedCommitId)) {
-              commitIdsToTags.get(resolvedCommitId).add(datedRevTag);
-            } else {
-              commitIdsToTags.put(resolvedCommitId, new ArrayList<>(Collections.singletonList(datedRevTag)));
-            }
+          try {
+            datedRevTags.add(new DatedRevTag(walk.parseTag(tagRef.getObjectId())));
+          } catch (IOException e) {
+            log.info(String.format("Failed while parsing [%s] -- ", tagRef));
           }
-        } catch (Exception ignored) {
-          log.info(String.format("Failed while parsing [%s] -- ", tagRef));
+        }
+        if (!datedRevTags.isEmpty()) {
+          commitIdsToTags.put(commitId, datedRevTags);
         }
       }
-
-      for (Map.Entry<ObjectId, List<DatedRevTag>> entry : commitIdsToTags.entrySet()) {
-        log.debug(String.format("key [%s], tags => [%s] ", entry.getKey(), entry.getValue()));
-      }
-      return commitIdsToTags;
-    } catch (Exception e) {
-      log.error("Unable to locate tags", e);
     }
-    return Collections.emptyMap();
-  }
-
-  /** Checks if the given object id resolved to a tag object */
-  private boolean isTagId(ObjectId objectId) {
-    return objectId.toString().startsWith("tag ");
+    return commitIdsToTags;
   }
 
+  /**
+   * @deprecated use {@link TagIndex#nameOf}, which only parses the dates of the tags of the commits asked for
+   */
+  @Deprecated
   protected HashMap<ObjectId, List<String>> transformRevTagsMapToDateSortedTagNames(Map<ObjectId, List<DatedRevTag>> commitIdsToTags) {
     HashMap<ObjectId, List<String>> commitIdsToTagNames = new HashMap<>();
     for (Map.Entry<ObjectId, List<DatedRevTag>> objectIdListEntry : commitIdsToTags.entrySet()) {
-      List<String> tagNames = transformRevTagsMapEntryToDateSortedTagNames(objectIdListEntry);
+      List<String> tagNames = objectIdListEntry.getValue()
+              .stream()
+              .sorted((revTag, revTag2) -> revTag2.date.compareTo(revTag.date))
+              .map(datedRevTag -> trimFullTagName(datedRevTag.tagName))
+              .collect(Collectors.toList());
 
       commitIdsToTagNames.put(objectIdListEntry.getKey(), tagNames);
     }
     return commitIdsToTagNames;
   }
 
-  private List<String> transformRevTagsMapEntryToDateSortedTagNames(Map.Entry<ObjectId, List<DatedRevTag>> objectIdListEntry) {
-    return objectIdListEntry.getValue()
-            .stream()
-            .sorted(datedRevTagComparator())
-            .map(datedRevTag -> trimFullTagName(datedRevTag.tagName))
-            .collect(Collectors.toList());
+  protected RevCommit findEvalCommitObjectId(@NonNull String evaluateOnCommit, @NonNull RevWalkContext context) throws RuntimeException {
+    try {
+      ObjectId evalCommitId = context.getRepository().resolve(evaluateOnCommit);
+
+      // parsed by the counting walk, so that it can be used as a starting point of the following walks
+      RevCommit evalCommit = context.countingWalk().parseCommit(evalCommitId);
+
+      log.debug(String.format("evalCommit is [%s]", evalCommit.getName()));
+      return evalCommit;
+    } catch (IOException ex) {
+      throw new RuntimeException("Unable to obtain " + evaluateOnCommit + " commit!", ex);
+    }
   }
 
-  private Comparator<DatedRevTag> datedRevTagComparator() {
-    return (revTag, revTag2) -> revTag2.date.compareTo(revTag.date);
+  /**
+   * @deprecated use {@link #findEvalCommitObjectId(String, RevWalkContext)}, which parses the commit with the walks of the current run
+   */
+  @Deprecated
+  protected RevCommit findEvalCommitObjectId(@NonNull String evaluateOnCommit, @NonNull Repository repo) throws RuntimeException {
+    try {
+      ObjectId evalCommitId = repo.resolve(evaluateOnCommit);
+
+      try (RevWalk walk = new RevWalk(repo)) {
+        RevCommit evalCommit = walk.parseCommit(evalCommitId);
+        walk.dispose();
+
+        log.debug(String.format("evalCommit is [%s]", evalCommit.getName()));
+        return evalCommit;
+      }
+    } catch (IOException ex) {
+      throw new RuntimeException("Unable to obtain " + evaluateOnCommit + " commit!", ex);
+    }
   }
 
   // Visible for testing
@@ -266,16 +268,22 @@ public class JGitCommon {
   }
 
   public List<RevCommit> findCommitsUntilSomeTag(Repository repo, RevCommit head, @NonNull Map<ObjectId, List<String>> tagObjectIdToName) {
-    try (RevWalk revWalk = new RevWalk(repo)) {
-      revWalk.markStart(head);
+    try (RevWalkContext context = new RevWalkContext(repo)) {
+      return findCommitsUntilSomeTag(context, head, objId -> {
+        List<String> maybeList = tagObjectIdToName.get(objId);
+        return maybeList != null && maybeList.get(0) != null;
+      });
+    }
+  }
+
+  private List<RevCommit> findCommitsUntilSomeTag(@NonNull RevWalkContext context, RevCommit head, @NonNull Predicate<ObjectId> isTagged) {
+    try {
+      RevWalk revWalk = context.countingWalk();
+      revWalk.markStart(revWalk.parseCommit(head));
 
       for (RevCommit commit : revWalk) {
-        ObjectId objId = commit.getId();
-        if (tagObjectIdToName.size() > 0) {
-          List<String> maybeList = tagObjectIdToName.get(objId);
-          if (maybeList != null && maybeList.get(0) != null) {
-            return Collections.singletonList(commit);
-          }
+        if (isTagged.test(commit)) {
+          return Collections.singletonList(commit);
         }
       }
 
@@ -291,91 +299,163 @@ public class JGitCommon {
    * @param child the child commit (starting point)
    * @param parent the parent commit (end point)
    * @return distance (number of commits) between the given commits
-   * @see <a href="https://github.com/mdonoughe/jgit-describe/blob/master/src/org/mdonoughe/JGitDescribeTask.java">mdonoughe/jgit-describe/blob/master/src/org/mdonoughe/JGitDescribeTask.java</a>
+   * @deprecated the closest tag and its distance are found in a single {@link DescribeWalk}
    */
+  @Deprecated
   protected int distanceBetween(@NonNull Repository repo, @NonNull RevCommit child, @NonNull RevCommit parent) {
     try (RevWalk revWalk = new RevWalk(repo)) {
-      revWalk.markStart(child);
-
-      Set<ObjectId> seena = new HashSet<>();
-      Set<ObjectId> seenb = new HashSet<>();
-      Queue<RevCommit> q = new ArrayDeque<>();
-
-      q.add(revWalk.parseCommit(child));
-      int distance = 0;
-      ObjectId parentId = parent.getId();
+      // the commits reachable from the child, but not from the parent, like git describe counts them
+      return RevWalkUtils.count(revWalk, revWalk.parseCommit(child), revWalk.parseCommit(parent));
+    } catch (Exception e) {
+      throw new RuntimeException(String.format("Unable to calculate distance between [%s] and [%s]", child, parent), e);
+    }
+  }
 
-      while (q.size() > 0) {
-        RevCommit commit = q.remove();
-        ObjectId commitId = commit.getId();
+  /**
+   * Finds the latest commit reachable from {@code start} that touched the given path.
+   * @param context the {@link RevWalkContext} of the current run
+   * @param start the commit to start searching from
+   * @param path the path (relative to the work tree) that should have been touched
+   * @return the latest commit that touched the path, or {@code null} if there is none
+   * @throws IOException if the history could not be read
+   */
+  @Nullable
+  public RevCommit findLatestCommitForPath(@NonNull RevWalkContext context, @NonNull ObjectId start, @NonNull String path) throws IOException {
+    return findLatestCommitForPath(context, start, path, false);
+  }
 
-        if (seena.contains(commitId)) {
-          continue;
-        }
-        seena.add(commitId);
-
-        if (parentId.equals(commitId)) {
-          // don't consider commits that are included in this commit
-          seeAllParents(revWalk, commit, seenb);
-          // remove things we shouldn't have included
-          for (ObjectId oid : seenb) {
-            if (seena.contains(oid)) {
-              distance--;
-            }
-          }
-          seena.addAll(seenb);
-          continue;
-        }
+  /**
+   * Finds the latest commit reachable from {@code start} that touched the given path.
+   * @param context the {@link RevWalkContext} of the current run
+   * @param start the commit to start searching from
+   * @param path the path (relative to the work tree) that should have been touched
+   * @param firstParent set to {@code true} to only search the first parents of merge commits
+   * @return the latest commit that touched the path, or {@code null} if there is none
+   * @throws IOException if the history could not be read
+   */
+  @Nullable
+  public RevCommit findLatestCommitForPath(@NonNull RevWalkContext context, @NonNull ObjectId start, @NonNull String path, boolean firstParent) throws IOException {
+    // asked for by most properties in per-module mode, each lookup is a path filtered history walk
+    Map<List<Object>, Optional<RevCommit>> latestCommits = context.getLatestCommitsForPath();
+    Optional<RevCommit> latestCommit = latestCommits.get(List.of(start.copy(), path, firstParent));
+    if (latestCommit == null) {
+      try (RevWalk revWalk = context.pathWalk(path, firstParent)) {
+        revWalk.markStart(revWalk.parseCommit(start));
+        latestCommit = Optional.ofNullable(revWalk.next());
+      }
+      latestCommits.put(List.of(start.copy(), path, firstParent), latestCommit);
+      // the latest commit that touched the path is also its own latest commit, which is asked for
+      // once the evaluated commit got replaced by it
+      latestCommit.ifPresent(commit -> latestCommits.put(List.of(commit.copy(), path, firstParent), Optional.of(commit)));
+    }
+    return latestCommit.orElse(null);
+  }
 
-        for (ObjectId oid : commit.getParents()) {
-          if (!seena.contains(oid)) {
-            q.add(revWalk.parseCommit(oid));
+  /**
+   * Finds the latest commits reachable from {@code start} that touched each of the given paths, all in a
+   * single history walk (see {@link LatestCommitWalk}) instead of one walk per path.
+   *
+   * <p>The commits found are kept with the repository in the {@link JGitRepositoryCache}, by start. In a reactor
+   * the first module asks for the paths of all modules, and the other modules then take their commit from there.</p>
+   *
+   * @param context the {@link RevWalkContext} of the current run
+   * @param start the commit to start searching from
+   * @param paths the paths (relative to the work tree) that should have been touched
+   * @param firstParent set to {@code true} to only search the first parents of merge commits
+   * @return the latest commit that touched each path, paths that were never touched are left out
+   * @throws IOException if the history could not be read
+   */
+  @NonNull
+  public Map<String, RevCommit> findLatestCommitsForPaths(@NonNull RevWalkContext context, @NonNull ObjectId start,
+      @NonNull Collection<String> paths, boolean firstParent) throws IOException {
+    Map<List<Object>, Optional<RevCommit>> latestCommits = context.getLatestCommitsForPath();
+    Map<String, RevCommit> result = new HashMap<>();
+    Set<String> missing = new LinkedHashSet<>();
+    RevWalk walk = null;
+    for (String path : paths) {
+      List<Object> key = List.of(start.copy(), path, firstParent);
+      Optional<RevCommit> latestCommit = latestCommits.get(key);
+      if (latestCommit == null) {
+        Optional<ObjectId> sharedCommit = getSharedLatestCommits(context.getRepository()).get(key);
+        if (sharedCommit != null) {
+          if (walk == null) {
+            walk = context.countingWalk();
           }
+          latestCommit = sharedCommit.isPresent() ? Optional.of(walk.parseCommit(sharedCommit.get())) : Optional.empty();
+          latestCommits.put(key, latestCommit);
         }
-        distance++;
       }
-      return distance;
-    } catch (Exception e) {
-      throw new RuntimeException(String.format("Unable to calculate distance between [%s] and [%s]", child, parent), e);
+      if (latestCommit == null) {
+        missing.add(path);
+      } else {
+        latestCommit.ifPresent(commit -> result.put(path, commit));
+      }
+    }
+    if (!missing.isEmpty()) {
+      Map<String, RevCommit> found = new LatestCommitWalk(context, firstParent).findLatestCommits(start, missing);
+      Map<List<Object>, Optional<ObjectId>> sharedLatestCommits = getSharedLatestCommits(context.getRepository());
+      for (String path : missing) {
+        Optional<RevCommit> latestCommit = Optional.ofNullable(found.get(path));
+        latestCommits.put(List.of(start.copy(), path, firstParent), latestCommit);
+        latestCommit.ifPresent(commit -> {
+          result.put(path, commit);
+          latestCommits.put(List.of(commit.copy(), path, firstParent), Optional.of(commit));
+        });
+        sharedLatestCommits.put(List.of(start.copy(), path, firstParent), latestCommit.map(RevCommit::copy));
+      }
     }
+    return result;
   }
 
-  private void seeAllParents(@NonNull RevWalk revWalk, RevCommit child, @NonNull Set<ObjectId> seen) throws IOException {
-    Queue<RevCommit> q = new ArrayDeque<>();
-    q.add(child);
+  /**
+   * @return the latest commits for paths found by the walks in the given repository, by the start of the
+   *         search, the path and whether only first parents were searched
+   */
+  @NonNull
+  private static Map<List<Object>, Optional<ObjectId>> getSharedLatestCommits(@NonNull Repository repository) {
+    return JGitRepositoryCache.getShared(repository, SHARED_LATEST_COMMITS, ConcurrentHashMap::new);
+  }
 
-    while (q.size() > 0) {
-      RevCommit commit = q.remove();
-      for (ObjectId oid : commit.getParents()) {
-        if (seen.contains(oid)) {
-          continue;
-        }
-        seen.add(oid);
-        q.add(revWalk.parseCommit(oid));
-      }
+  public static boolean isRepositoryInDirtyState(Repository repo, String pathFilter) throws GitAPIException {
+    return isRepositoryInDirtyState(repo, pathFilter, new DirtyCheck.Options());
+  }
+
+  /**
+   * Git describe doesn't mind about untracked files when checking if the repository is dirty, and neither
+   * does this check. It stops at the first tracked file that differs, see {@link DirtyCheck}.
+   *
+   * @param repo the repository to check
+   * @param pathFilter only check this path (relative to the work tree), {@code null} to check everything
+   * @param options how to check it: the submodules, the number of threads, whether to trust the file attributes
+   * @return {@code true} if any tracked file differs between {@code HEAD}, the index and the work tree
+   * @throws GitAPIException if the index or the files can't be read
+   */
+  public static boolean isRepositoryInDirtyState(Repository repo, String pathFilter, DirtyCheck.@NonNull Options options) throws GitAPIException {
+    try {
+      return new DirtyCheck(repo, options).isDirty(pathFilter);
+    } catch (IOException e) {
+      throw new JGitInternalException(e.getMessage(), e);
     }
   }
 
-  public static boolean isRepositoryInDirtyState(Repository repo, String pathFilter) throws GitAPIException {
-    try (Git git = Git.wrap(repo)) {
-      Status status;
-      if (pathFilter != null && !pathFilter.isEmpty()) {
-        // When path filter is present, check dirty state only for that path
-        status = git.status().addPath(pathFilter).call();
-      } else {
-        // Fallback to normal behavior - check entire repository
-        status = git.status().call();
-      }
-      // Git describe doesn't mind about untracked files when checking if
-      // repo is dirty. JGit does this, so we cannot use the isClean method
-      // to get the same behaviour. Instead check dirty state without
-      // status.getUntracked().isEmpty()
-      return !(status.getAdded().isEmpty()
-              && status.getChanged().isEmpty()
-              && status.getRemoved().isEmpty()
-              && status.getMissing().isEmpty()
-              && status.getModified().isEmpty()
-              && status.getConflicting().isEmpty());
+  /**
+   * Checks several paths, e.g. the modules of a build, in a single walk over the index and the work tree,
+   * see {@link DirtyCheck#findDirtyPaths(Collection)}.
+   *
+   * @param repo the repository to check
+   * @param paths the paths (relative to the work tree) to check
+   * @param options how to check them, see {@link #isRepositoryInDirtyState(Repository, String, DirtyCheck.Options)}
+   * @return the given paths that contain a tracked file which differs between {@code HEAD}, the index and the work tree
+   * @throws GitAPIException if the index or the files can't be read
+   */
+  @NonNull
+  public static Set<String> findDirtyPaths(Repository repo, @NonNull Collection<String> paths,
+      DirtyCheck.@NonNull Options options) throws GitAPIException {
+    try {
+      return new DirtyCheck(repo, options).findDirtyPaths(paths);
+    } catch (IOException e) {
+      throw new JGitInternalException(e.getMessage(), e);
     }
   }
+
 }
@@ -0,0 +1,246 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.util.SystemReader;
+import org.jspecify.annotations.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A JVM wide, reference counted cache of opened JGit {@link Repository} instances.
+ *
+ * <p>Opening a repository means scanning the environment, walking up the directory tree and
+ * opening the pack indexes. Within a multi-module reactor every module used to pay this price
+ * again, although all of them look at the very same repository. Repositories acquired from this
+ * cache are shared by all providers in the JVM and stay open after their last release, so that the
+ * next module can simply pick them up again.</p>
+ *
+ * <p>Entries are keyed by the canonical git directory. A directory that got deleted and re-created
+ * in between (e.g. a fresh clone at the same location) is detected by the file keys and creation times
+ * of its top level directories and never served from a stale entry. Writes to the repository (refs, objects, the index) don't change these, so they keep the entry.
+ * Entries that were not used for {@link #IDLE_EXPIRY_MS} are closed on the next acquire or release.</p>
+ *
+ * <p>Results worth sharing between the runs on a repository can be kept with its entry, see
+ * {@link #getShared(Repository, Object, Supplier)}. They go away with the entry.</p>
+ */
+public final class JGitRepositoryCache {
+
+  /**
+   * Time after which an unused repository is closed and removed from the cache.
+   */
+  static final long IDLE_EXPIRY_MS = TimeUnit.MINUTES.toMillis(10);
+
+  private static final Map<File, Entry> CACHE = new HashMap<>();
+
+  // Visible for testing
+  static LongSupplier clock = System::currentTimeMillis;
+
+  private JGitRepositoryCache() {
+  }
+
+  /**
+   * Returns an opened {@link Repository} for the given git directory, opening it if no cached
+   * instance exists. Every call must be paired with a call to {@link #release(Repository)}.
+   *
+   * @param dotGitDirectory the git directory (or a directory below the work tree) to open
+   * @return the shared repository instance
+   * @throws IOException if the repository could not be opened
+   */
+  @NonNull
+  public static Repository acquire(@NonNull File dotGitDirectory) throws IOException {
+    FileRepositoryBuilder repositoryBuilder = new FileRepositoryBuilder()
+        .setGitDir(dotGitDirectory)
+        .readEnvironment() // scan environment GIT_* variables
+        .findGitDir(); // scan up the file system tree
+    repositoryBuilder.setup();
+
+    File gitDir = repositoryBuilder.getGitDir().getCanonicalFile();
+    Object identity = identityOf(gitDir);
+
+    synchronized (CACHE) {
+      expireIdleEntries();
+
+      Entry entry = CACHE.get(gitDir);
+      if (entry != null && !Objects.equals(entry.identity, identity)) {
+        // the directory was replaced by a different repository
+        CACHE.remove(gitDir);
+        if (entry.references == 0) {
+          entry.repository.close();
+        }
+        entry = null;
+      }
+      if (entry == null) {
+        entry = new Entry(repositoryBuilder.build(), identity);
+        CACHE.put(gitDir, entry);
+      }
+      entry.references++;
+      entry.lastUsed = clock.getAsLong();
+      return entry.repository;
+    }
+  }
+
+  /**
+   * Hands a repository obtained by {@link #acquire(File)} back to the cache.
+   *
+   * On Windows the repository is closed as soon as nobody uses it anymore,
+   * since open pack files would otherwise keep the repository locked.
+   *
+   * @param repository the repository to release
+   */
+  public static void release(@NonNull Repository repository) {
+    release(repository, SystemReader.getInstance().isWindows());
+  }
+
+  /**
+   * Hands a repository obtained by {@link #acquire(File)} back to the cache.
+   *
+   * @param repository the repository to release
+   * @param closeWhenUnused {@code true} to close the repository (and release its file handles)
+   *                        as soon as nobody uses it anymore, instead of keeping it for the next run
+   */
+  public static void release(@NonNull Repository repository, boolean closeWhenUnused) {
+    synchronized (CACHE) {
+      Iterator<Map.Entry<File, Entry>> it = CACHE.entrySet().iterator();
+      while (it.hasNext()) {
+        Entry entry = it.next().getValue();
+        if (entry.repository == repository) {
+          entry.references--;
+          entry.lastUsed = clock.getAsLong();
+          if (entry.references <= 0 && closeWhenUnused) {
+            it.remove();
+            entry.repository.close();
+          }
+          expireIdleEntries();
+          return;
+        }
+      }
+      expireIdleEntries();
+    }
+    // not (or no longer) cached, e.g. replaced in between
+    repository.close();
+  }
+
+  /**
+   * Closes all repositories that are currently not in use and removes them from the cache.
+   */
+  public static void clear() {
+    synchronized (CACHE) {
+      Iterator<Entry> it = CACHE.values().iterator();
+      while (it.hasNext()) {
+        Entry entry = it.next();
+        if (entry.references <= 0) {
+          it.remove();
+          entry.repository.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the value kept under the given key with the cache entry of a repository, creating it on first use.
+   * The value is dropped together with the entry, when the repository is closed or replaced.
+   *
+   * <p>The value is created without holding the cache, so that other repositories can be acquired and released
+   * meanwhile. Callers creating the value at the same time all create one, the first one kept wins.</p>
+   *
+   * @param repository the repository the value belongs to
+   * @param key identifies the value
+   * @param factory creates the value if there is none yet
+   * @param <T> the type of the value
+   * @return the shared value, or a new one that isn't kept if the repository wasn't acquired from this cache
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  static <T> T getShared(@NonNull Repository repository, @NonNull Object key, @NonNull Supplier<T> factory) {
+    Entry entry = null;
+    synchronized (CACHE) {
+      for (Entry cached : CACHE.values()) {
+        if (cached.repository == repository) {
+          entry = cached;
+          Object shared = entry.shared.get(key);
+          if (shared != null) {
+            return (T) shared;
+          }
+        }
+      }
+    }
+    T value = factory.get();
+    if (entry == null) {
+      return value;
+    }
+    synchronized (CACHE) {
+      Object shared = entry.shared.putIfAbsent(key, value);
+      return shared != null ? (T) shared : value;
+    }
+  }
+
+  private static void expireIdleEntries() {
+    long now = clock.getAsLong();
+    Iterator<Entry> it = CACHE.values().iterator();
+    while (it.hasNext()) {
+      Entry entry = it.next();
+      if (entry.references <= 0 && (now - entry.lastUsed) > IDLE_EXPIRY_MS) {
+        it.remove();
+        entry.repository.close();
+      }
+    }
+  }
+
+  /**
+   * @return the file keys (inodes) and creation times of the git directory and its object and ref stores
+   */
+  @NonNull
+  private static Object identityOf(@NonNull File gitDir) {
+    List<Object> identity = new ArrayList<>();
+    for (File dir : Arrays.asList(gitDir, new File(gitDir, "objects"), new File(gitDir, "refs"))) {
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(dir.toPath(), BasicFileAttributes.class);
+        identity.add(attributes.fileKey());
+        // only a creation time of its own, not the modification time reported instead where there is none
+        boolean hasCreationTime = !attributes.creationTime().equals(attributes.lastModifiedTime());
+        identity.add(hasCreationTime ? attributes.creationTime() : null);
+      } catch (IOException e) {
+        identity.add(null);
+      }
+    }
+    return identity;
+  }
+
+  private static class Entry {
+    final Repository repository;
+    final Object identity;
+    final Map<Object, Object> shared = new HashMap<>();
+    int references;
+    long lastUsed;
+
+    Entry(Repository repository, Object identity) {
+      this.repository = repository;
+      this.identity = identity;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.util.SystemReader;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import pl.project13.core.git.JGitCacheConfig;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Applies a {@link JGitCacheConfig} to JGit's JVM wide pack file cache ({@code WindowCache}).
+ *
+ * Installing a {@link WindowCacheConfig} drops every cached pack window in the JVM,
+ * so the cache is only re-installed when the tuning actually changed or when the
+ * configured {@link JGitCacheConfig.CleanUpMode} asks to release the pack files.
+ */
+public final class JGitWindowCache {
+
+  @Nullable
+  private static List<Object> installedTuning;
+
+  private JGitWindowCache() {
+  }
+
+  /**
+   * Installs the tuning of the given configuration, unless it is already in place.
+   *
+   * @param config the cache configuration, {@code null} for JGit's defaults
+   */
+  public static synchronized void configure(@Nullable JGitCacheConfig config) {
+    List<Object> tuning = tuningOf(config);
+    if (installedTuning == null && tuning.stream().allMatch(Objects::isNull)) {
+      // nothing was ever tuned, JGit's defaults are already in place
+      return;
+    }
+    if (!tuning.equals(installedTuning)) {
+      install(config);
+    }
+  }
+
+  /**
+   * Drops all cached pack windows, which releases the file handles of all pack files.
+   * This is required on Windows where open pack files keep the repository locked.
+   *
+   * @param config the cache configuration to re-install, {@code null} for JGit's defaults
+   */
+  public static synchronized void releasePackFiles(@Nullable JGitCacheConfig config) {
+    install(config);
+  }
+
+  /**
+   * @param config the cache configuration, {@code null} for JGit's defaults
+   * @return {@code true} if pack files and repositories should be released after a run
+   */
+  public static boolean shouldReleaseAfterRun(@Nullable JGitCacheConfig config) {
+    JGitCacheConfig.CleanUpMode mode = (config == null || config.getCleanUp() == null)
+        ? JGitCacheConfig.CleanUpMode.AUTO
+        : config.getCleanUp();
+    switch (mode) {
+      case ALWAYS:
+        return true;
+      case NEVER:
+        return false;
+      case AUTO:
+      default:
+        return SystemReader.getInstance().isWindows();
+    }
+  }
+
+  private static void install(@Nullable JGitCacheConfig config) {
+    WindowCacheConfig windowCacheConfig = new WindowCacheConfig();
+    if (config != null) {
+      if (config.getPackedGitLimit() != null) {
+        windowCacheConfig.setPackedGitLimit(config.getPackedGitLimit());
+      }
+      if (config.getPackedGitWindowSize() != null) {
+        windowCacheConfig.setPackedGitWindowSize(config.getPackedGitWindowSize());
+      }
+      if (config.getPackedGitMMAP() != null) {
+        windowCacheConfig.setPackedGitMMAP(config.getPackedGitMMAP());
+      }
+      if (config.getDeltaBaseCacheLimit() != null) {
+        windowCacheConfig.setDeltaBaseCacheLimit(config.getDeltaBaseCacheLimit());
+      }
+      if (config.getStreamFileThreshold() != null) {
+        windowCacheConfig.setStreamFileThreshold(config.getStreamFileThreshold());
+      }
+    }
+    windowCacheConfig.install();
+    installedTuning = tuningOf(config);
+  }
+
+  @NonNull
+  private static List<Object> tuningOf(@Nullable JGitCacheConfig config) {
+    if (config == null) {
+      return Arrays.asList(null, null, null, null, null);
+    }
+    return Arrays.asList(
+        config.getPackedGitLimit(),
+        config.getPackedGitWindowSize(),
+        config.getPackedGitMMAP(),
+        config.getDeltaBaseCacheLimit(),
+        config.getStreamFileThreshold());
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Finds the latest commit that touched each of a set of paths in a single history walk, giving the same
+ * commits as a {@link RevWalkContext#pathWalk(String, boolean)} per path would.
+ *
+ * <p>A path walk follows a single line of commits: a merge that has the same content at the path as one of
+ * its parents continues with that parent only (history simplification), and the first commit that differs
+ * from all of its parents is the result. This walk follows those lines for all paths at once, newest commit
+ * first. Every commit is visited once for all the paths that lead to it, and its tree is compared with
+ * each parent only once, for all of these paths together. A path is done once its commit is found, and the
+ * walk ends once all paths are done.</p>
+ *
+ * <p>When the commit-graph carries changed path filters, the paths a commit certainly didn't change are
+ * handed to its first parent without comparing the trees.</p>
+ */
+public class LatestCommitWalk {
+
+  private final RevWalkContext context;
+  private final boolean firstParent;
+
+  /**
+   * @param context the context to read the history with
+   * @param firstParent set to {@code true} to only follow the first parent of merge commits
+   */
+  public LatestCommitWalk(@NonNull RevWalkContext context, boolean firstParent) {
+    this.context = context;
+    this.firstParent = firstParent;
+  }
+
+  /**
+   * @param start the commit to start searching from
+   * @param paths the paths (relative to the work tree) to search the latest commits of
+   * @return the latest commit that touched each path, paths that were never touched are left out
+   * @throws IOException if the history could not be read
+   */
+  @NonNull
+  public Map<String, RevCommit> findLatestCommits(@NonNull AnyObjectId start, @NonNull Collection<String> paths) throws IOException {
+    Map<String, RevCommit> latestCommits = new HashMap<>();
+    if (paths.isEmpty()) {
+      return latestCommits;
+    }
+    try (RevWalk walk = new RevWalk(context.getObjectReader())) {
+      walk.setRetainBody(false);
+      Map<RevCommit, Set<String>> pending = new HashMap<>();
+      PriorityQueue<RevCommit> queue = new PriorityQueue<>(Comparator.comparingInt(RevCommit::getCommitTime).reversed());
+      RevCommit startCommit = walk.parseCommit(start);
+      pending.put(startCommit, new LinkedHashSet<>(paths));
+      queue.add(startCommit);
+
+      while (!queue.isEmpty()) {
+        RevCommit commit = queue.poll();
+        // a commit gets queued again when another line leads to it after it was visited
+        Set<String> remaining = pending.remove(commit);
+        if (remaining == null) {
+          continue;
+        }
+        int parentCount = firstParent ? Math.min(1, commit.getParentCount()) : commit.getParentCount();
+        if (parentCount > 0) {
+          for (String path : unchangedByChangedPathFilter(commit, remaining)) {
+            remaining.remove(path);
+            follow(walk, commit.getParent(0), path, pending, queue);
+          }
+        }
+        // like a path walk, continue with the first parent that has the same content at the path
+        for (int i = 0; i < parentCount && !remaining.isEmpty(); i++) {
+          RevCommit parent = commit.getParent(i);
+          walk.parseHeaders(parent);
+          Set<String> changed = changedPaths(walk, parent, commit, remaining);
+          for (String path : remaining) {
+            if (!changed.contains(path)) {
+              follow(walk, parent, path, pending, queue);
+            }
+          }
+          remaining = changed;
+        }
+        if (parentCount == 0) {
+          remaining = changedPaths(walk, null, commit, remaining);
+        }
+        for (String path : remaining) {
+          latestCommits.put(path, commit);
+        }
+      }
+    }
+    return latestCommits;
+  }
+
+  private static void follow(@NonNull RevWalk walk, @NonNull RevCommit parent, @NonNull String path,
+      @NonNull Map<RevCommit, Set<String>> pending, @NonNull PriorityQueue<RevCommit> queue) throws IOException {
+    Set<String> paths = pending.get(parent);
+    if (paths == null) {
+      walk.parseHeaders(parent);
+      paths = new LinkedHashSet<>();
+      pending.put(parent, paths);
+      queue.add(parent);
+    }
+    paths.add(path);
+  }
+
+  /**
+   * @return the paths the changed path filter of the commit-graph rules out, empty when it holds no filter
+   */
+  @NonNull
+  private List<String> unchangedByChangedPathFilter(@NonNull RevCommit commit, @NonNull Set<String> paths) {
+    List<String> unchanged = new ArrayList<>();
+    CommitGraphAccess graph = context.getCommitGraph();
+    int position = graph.findGraphPosition(commit);
+    if (position >= 0) {
+      for (String path : paths) {
+        if (!graph.mayHaveChanged(position, RevWalkContext.changedPath(path))) {
+          unchanged.add(path);
+        }
+      }
+    }
+    return unchanged;
+  }
+
+  /**
+   * @param parent the parent to compare with, {@code null} for a root commit
+   * @return the paths whose content differs between the commit and the parent
+   */
+  @NonNull
+  private static Set<String> changedPaths(@NonNull RevWalk walk, @Nullable RevCommit parent, @NonNull RevCommit commit,
+      @NonNull Set<String> paths) throws IOException {
+    Set<String> changed = new HashSet<>();
+    try (TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+      treeWalk.setFilter(AndTreeFilter.create(PathFilterGroup.createFromStrings(paths), TreeFilter.ANY_DIFF));
+      treeWalk.setRecursive(true);
+      if (parent != null) {
+        treeWalk.addTree(parent.getTree());
+      } else {
+        treeWalk.addTree(new EmptyTreeIterator());
+      }
+      treeWalk.addTree(commit.getTree());
+      while (changed.size() < paths.size() && treeWalk.next()) {
+        String entry = treeWalk.getPathString();
+        for (String path : paths) {
+          String directory = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+          if (entry.equals(directory) || entry.startsWith(directory + "/")) {
+            changed.add(path);
+          }
+        }
+      }
+    }
+    return changed;
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Walks the whole history below a commit on several threads, for jobs that have to visit every commit
+ * (like <pre>git rev-list --count</pre>) and can't be answered from the reachability bitmaps.
+ *
+ * <p>Each thread reads the commits through its own {@link ObjectReader}, so inflating the commits from
+ * the pack files (the bulk of the work when the pack file cache is cold) scales with the threads. Every
+ * thread walks its own part of the frontier depth first, and hands half of it to an idle thread once there
+ * is more than one parent to follow. The threads share the set of visited commits without locking: commits
+ * of the commit-graph get a bit by their position in the graph, the others go into a concurrent set.</p>
+ *
+ * <p>The commits are read as they are stored. Callers have to fall back to a {@link org.eclipse.jgit.revwalk.RevWalk}
+ * when the parents of commits might be rewritten (grafts of shallow clones, replace refs).</p>
+ */
+public class ParallelCommitWalk {
+
+  private static final byte[] PARENT = Constants.encodeASCII("parent ");
+  // "tree <id>\n"
+  private static final int FIRST_PARENT_OFFSET = 5 + Constants.OBJECT_ID_STRING_LENGTH + 1;
+
+  private final Repository repository;
+  private final CommitGraphAccess commitGraph;
+  private final int threads;
+
+  /**
+   * @param repository the repository to read the commits from
+   * @param commitGraph the commit-graph of the repository, {@link CommitGraphAccess#EMPTY} if there is none
+   * @param threads the number of threads to walk with
+   */
+  ParallelCommitWalk(@NonNull Repository repository, @NonNull CommitGraphAccess commitGraph, int threads) {
+    this.repository = repository;
+    this.commitGraph = commitGraph;
+    this.threads = threads;
+  }
+
+  /**
+   * @param start the commit to count from
+   * @return the number of commits reachable from the given commit, including the commit itself
+   * @throws IOException if one of the commits can't be read
+   */
+  public long countCommits(@NonNull AnyObjectId start) throws IOException {
+    Traversal traversal = new Traversal();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      WalkTask root = new WalkTask(traversal);
+      int position = commitGraph.findGraphPosition(start);
+      if (position >= 0) {
+        traversal.visit(position);
+        root.positions.push(position);
+      } else {
+        traversal.visit(start);
+        root.ids.push(start.copy());
+      }
+      pool.invoke(root);
+      return traversal.count.sum();
+    } catch (UncheckedIOException e) {
+      // rethrown on another thread than the failed task ran on, the exception might be wrapped once more
+      Throwable cause = e;
+      while (cause instanceof UncheckedIOException) {
+        cause = cause.getCause();
+      }
+      throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    } finally {
+      pool.shutdown();
+      for (ObjectReader reader : traversal.readers) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * The state shared by the threads of one traversal.
+   */
+  private class Traversal {
+    private final AtomicLongArray visitedPositions = new AtomicLongArray((int) ((commitGraph.getCommitCount() + 63) / 64));
+    private final Set<ObjectId> visitedIds = ConcurrentHashMap.newKeySet();
+    private final LongAdder count = new LongAdder();
+    private final Queue<ObjectReader> readers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ObjectReader> reader = ThreadLocal.withInitial(() -> {
+      ObjectReader newReader = repository.newObjectReader();
+      readers.add(newReader);
+      return newReader;
+    });
+
+    /**
+     * @return {@code true} if the commit at the given position of the commit-graph wasn't visited before
+     */
+    private boolean visit(int position) {
+      int index = position >>> 6;
+      long bit = 1L << position;
+      long bits;
+      do {
+        bits = visitedPositions.get(index);
+        if ((bits & bit) != 0) {
+          return false;
+        }
+      } while (!visitedPositions.compareAndSet(index, bits, bits | bit));
+      return true;
+    }
+
+    /**
+     * @return {@code true} if the commit, which is not in the commit-graph, wasn't visited before
+     */
+    private boolean visit(@NonNull AnyObjectId id) {
+      return visitedIds.add(id.copy());
+    }
+  }
+
+  private class WalkTask extends RecursiveAction {
+    private final Traversal traversal;
+    // the commits of the commit-graph only have ancestors within the graph
+    private final Deque<Integer> positions = new ArrayDeque<>();
+    private final Deque<ObjectId> ids = new ArrayDeque<>();
+
+    private WalkTask(@NonNull Traversal traversal) {
+      this.traversal = traversal;
+    }
+
+    @Override
+    protected void compute() {
+      List<WalkTask> forked = new ArrayList<>();
+      long count = 0;
+      try {
+        while (!ids.isEmpty() || !positions.isEmpty()) {
+          if (ids.isEmpty()) {
+            walkGraphCommit(positions.pop());
+          } else {
+            walkCommit(ids.pop());
+          }
+          count++;
+          if (ids.size() + positions.size() > 1 && getSurplusQueuedTaskCount() == 0) {
+            forked.add(split());
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } finally {
+        traversal.count.add(count);
+      }
+      for (WalkTask task : forked) {
+        task.join();
+      }
+    }
+
+    private void walkGraphCommit(int position) {
+      for (int parent : commitGraph.getParents(position)) {
+        if (traversal.visit(parent)) {
+          positions.push(parent);
+        }
+      }
+    }
+
+    private void walkCommit(@NonNull ObjectId id) throws IOException {
+      byte[] raw = traversal.reader.get().open(id, Constants.OBJ_COMMIT).getCachedBytes();
+      int ptr = FIRST_PARENT_OFFSET;
+      while (RawParseUtils.match(raw, ptr, PARENT) >= 0) {
+        ObjectId parent = ObjectId.fromString(raw, ptr + PARENT.length);
+        int position = commitGraph.findGraphPosition(parent);
+        if (position >= 0) {
+          if (traversal.visit(position)) {
+            positions.push(position);
+          }
+        } else if (traversal.visit(parent)) {
+          ids.push(parent);
+        }
+        ptr += PARENT.length + Constants.OBJECT_ID_STRING_LENGTH + 1;
+      }
+    }
+
+    /**
+     * Hands the older half of the frontier over to a new task, which idle threads then steal.
+     */
+    @NonNull
+    private WalkTask split() {
+      WalkTask task = new WalkTask(traversal);
+      int idCount = ids.size() / 2;
+      // a single commit of each kind left, hand over the one in the graph
+      int positionCount = idCount == 0 && positions.size() == 1 ? 1 : positions.size() / 2;
+      for (int i = 0; i < idCount; i++) {
+        task.ids.push(ids.removeLast());
+      }
+      for (int i = 0; i < positionCount; i++) {
+        task.positions.push(positions.removeLast());
+      }
+      task.fork();
+      return task;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapObject;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Answers reachability questions from the reachability bitmaps of a pack, which <pre>git gc</pre> and
+ * <pre>git repack -b</pre> write next to the pack (<pre>.bitmap</pre>).
+ *
+ * <p>The bitmap of a commit holds every object reachable from it. So the history below a commit with a
+ * bitmap doesn't need to be walked at all, only the commits made since the pack was written are.</p>
+ */
+public class ReachabilityBitmaps {
+
+  private final BitmapIndex bitmapIndex;
+  private final Map<ObjectId, EWAHCompressedBitmap> targets = new HashMap<>();
+
+  /**
+   * @param bitmapIndex the bitmap index of the repository
+   */
+  public ReachabilityBitmaps(@NonNull BitmapIndex bitmapIndex) {
+    this.bitmapIndex = bitmapIndex;
+  }
+
+  /**
+   * Counts the commits reachable from the given commit, like <pre>git rev-list --count --use-bitmap-index</pre>.
+   *
+   * @param walk the walk the commit was parsed with, parses the commits without a bitmap
+   * @param start the commit to count from, with its headers parsed
+   * @return the number of commits reachable from the given commit, including the commit itself
+   * @throws IOException if one of the commits without a bitmap can't be read
+   */
+  public int countCommits(@NonNull RevWalk walk, @NonNull RevCommit start) throws IOException {
+    BitmapIndex.BitmapBuilder covered = bitmapIndex.newBitmapBuilder();
+    RevFlag seen = walk.newFlag("BITMAP_SEEN");
+    List<RevCommit> walked = new ArrayList<>();
+    try {
+      // newest first, the commits with a bitmap then usually cover the older commits before they get walked
+      PriorityQueue<RevCommit> queue = new PriorityQueue<>(Comparator.comparingInt(RevCommit::getCommitTime).reversed());
+      start.add(seen);
+      walked.add(start);
+      queue.add(start);
+      while (!queue.isEmpty()) {
+        RevCommit commit = queue.poll();
+        if (covered.contains(commit)) {
+          continue;
+        }
+        BitmapIndex.Bitmap bitmap = bitmapIndex.getBitmap(commit);
+        if (bitmap != null) {
+          covered.or(bitmap);
+          continue;
+        }
+        for (RevCommit parent : commit.getParents()) {
+          if (!parent.has(seen)) {
+            walk.parseHeaders(parent);
+            parent.add(seen);
+            walked.add(parent);
+            queue.add(parent);
+          }
+        }
+      }
+
+      int count = 0;
+      for (RevCommit commit : walked) {
+        // a commit walked before the bitmap of one of its descendants got added is counted by the bitmap
+        if (!covered.contains(commit)) {
+          count++;
+        }
+      }
+      // the objects of a bitmap are iterated by type, commits first
+      for (BitmapObject object : covered) {
+        if (object.getType() != Constants.OBJ_COMMIT) {
+          break;
+        }
+        count++;
+      }
+      return count;
+    } finally {
+      for (RevCommit commit : walked) {
+        commit.remove(seen);
+      }
+      walk.disposeFlag(seen);
+    }
+  }
+
+  /**
+   * @param commitId the commit to look up the bitmap of
+   * @param targetId the commit to search for
+   * @return whether the target is reachable from the commit according to its bitmap,
+   *         {@code null} if the commit has no bitmap
+   */
+  @Nullable
+  public Boolean reaches(@NonNull AnyObjectId commitId, @NonNull AnyObjectId targetId) {
+    BitmapIndex.Bitmap bitmap = bitmapIndex.getBitmap(commitId);
+    if (bitmap == null) {
+      return null;
+    }
+    EWAHCompressedBitmap target = targets.computeIfAbsent(targetId.copy(),
+        id -> bitmapIndex.newBitmapBuilder().addObject(id, Constants.OBJ_COMMIT).build().retrieveCompressed());
+    // a target outside of the pack gets a position past its objects, which no bitmap of the pack has set
+    return bitmap.retrieveCompressed().intersects(target);
+  }
+}
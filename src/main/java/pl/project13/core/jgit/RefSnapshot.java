@@ -0,0 +1,214 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * An immutable view of the tags and branches of a repository, taken once per run.
+ *
+ * <p>Every tag is peeled when the snapshot is taken. Refs from {@code packed-refs} usually carry their
+ * peeled id already; all others are peeled through the walk of the current run (instead of letting the
+ * {@link RefDatabase} open a new walk per ref). Annotated and lightweight tags are told apart by the
+ * type of the object they point at. Tags pointing at missing or corrupt objects are left out.</p>
+ *
+ * <p>The tags (and branches) pointing at an object are looked up through reverse indexes,
+ * instead of scanning all refs again for every lookup.</p>
+ */
+public class RefSnapshot {
+
+  private final List<TagRef> tags;
+  private final Map<ObjectId, List<TagRef>> tagsByObjectId;
+  private final Map<ObjectId, List<String>> branchesByObjectId;
+  private final Set<String> lowerCaseTagNames;
+
+  private RefSnapshot(List<TagRef> tags, Map<ObjectId, List<String>> branchesByObjectId) {
+    this.tags = Collections.unmodifiableList(tags);
+    this.branchesByObjectId = Collections.unmodifiableMap(branchesByObjectId);
+
+    Map<ObjectId, List<TagRef>> tagsByObjectId = new HashMap<>();
+    Set<String> lowerCaseTagNames = new HashSet<>();
+    for (TagRef tag : tags) {
+      tagsByObjectId.computeIfAbsent(tag.getObjectId(), id -> new ArrayList<>()).add(tag);
+      lowerCaseTagNames.add(tag.getShortName().toLowerCase(Locale.ROOT));
+    }
+    this.tagsByObjectId = Collections.unmodifiableMap(tagsByObjectId);
+    this.lowerCaseTagNames = Collections.unmodifiableSet(lowerCaseTagNames);
+  }
+
+  /**
+   * Reads all tags and branches of the repository.
+   *
+   * @param repository the repository to read the refs from
+   * @param walk the walk used to peel tags which are not peeled by the ref database already
+   * @return the snapshot
+   * @throws IOException if the refs could not be read
+   */
+  @NonNull
+  public static RefSnapshot of(@NonNull Repository repository, @NonNull RevWalk walk) throws IOException {
+    RefDatabase refDatabase = repository.getRefDatabase();
+
+    List<TagRef> tags = new ArrayList<>();
+    for (Ref ref : refDatabase.getRefsByPrefix(Constants.R_TAGS)) {
+      ObjectId objectId = ref.getObjectId();
+      if (objectId == null) {
+        continue;
+      }
+      ObjectId peeledObjectId;
+      if (ref.isPeeled()) {
+        peeledObjectId = ref.getPeeledObjectId();
+      } else {
+        try {
+          RevObject object = walk.parseAny(objectId);
+          peeledObjectId = (object instanceof RevTag) ? walk.peel(object).copy() : null;
+        } catch (MissingObjectException | CorruptObjectException e) {
+          // a dangling or broken tag, which can't be described with
+          continue;
+        }
+      }
+      tags.add(new TagRef(ref.getName(), objectId.copy(), peeledObjectId));
+    }
+    tags.sort(Comparator.comparing(TagRef::getName));
+
+    Map<ObjectId, List<String>> branchesByObjectId = new HashMap<>();
+    for (Ref ref : refDatabase.getRefsByPrefix(Constants.R_HEADS)) {
+      if (ref.getObjectId() != null) {
+        branchesByObjectId
+            .computeIfAbsent(ref.getObjectId().copy(), id -> new ArrayList<>())
+            .add(Repository.shortenRefName(ref.getName()));
+      }
+    }
+    for (Map.Entry<ObjectId, List<String>> entry : branchesByObjectId.entrySet()) {
+      List<String> branches = new ArrayList<>(new TreeSet<>(entry.getValue()));
+      entry.setValue(Collections.unmodifiableList(branches));
+    }
+
+    return new RefSnapshot(tags, branchesByObjectId);
+  }
+
+  /**
+   * @return all tags, ordered by their name
+   */
+  @NonNull
+  public List<TagRef> getTags() {
+    return tags;
+  }
+
+  /**
+   * @param objectId the object the tags should point at
+   * @return the tags, ordered by their name, whose ref points directly at the given object
+   */
+  @NonNull
+  public List<TagRef> getTagsPointingAt(@NonNull AnyObjectId objectId) {
+    return tagsByObjectId.getOrDefault(objectId, Collections.emptyList());
+  }
+
+  /**
+   * @param shortName the name of the tag, without the {@code refs/tags/} prefix
+   * @return {@code true} if a tag with this name (ignoring the case) exists
+   */
+  public boolean hasTagIgnoreCase(@NonNull String shortName) {
+    return lowerCaseTagNames.contains(shortName.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * @param objectId the object the branches should point at
+   * @return the short names of the branches, sorted and distinct, that point at the given object
+   */
+  @NonNull
+  public List<String> getBranchesPointingAt(@NonNull AnyObjectId objectId) {
+    return branchesByObjectId.getOrDefault(objectId, Collections.emptyList());
+  }
+
+  /**
+   * A single tag of a {@link RefSnapshot}.
+   */
+  public static class TagRef {
+    private final String name;
+    private final ObjectId objectId;
+    private final ObjectId peeledObjectId;
+
+    TagRef(@NonNull String name, @NonNull ObjectId objectId, ObjectId peeledObjectId) {
+      this.name = name;
+      this.objectId = objectId;
+      this.peeledObjectId = peeledObjectId;
+    }
+
+    /**
+     * @return the full name of the tag, e.g. <pre>refs/tags/v1.0</pre>
+     */
+    @NonNull
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the name of the tag, e.g. <pre>v1.0</pre>
+     */
+    @NonNull
+    public String getShortName() {
+      return Repository.shortenRefName(name);
+    }
+
+    /**
+     * @return the object the tag points at, the tag object itself for annotated tags
+     */
+    @NonNull
+    public ObjectId getObjectId() {
+      return objectId;
+    }
+
+    /**
+     * @return the object the tag finally refers to, once all tag objects are peeled off
+     */
+    @NonNull
+    public ObjectId getPeeledObjectId() {
+      return peeledObjectId != null ? peeledObjectId : objectId;
+    }
+
+    /**
+     * @return {@code true} for annotated tags, {@code false} for lightweight tags
+     */
+    public boolean isAnnotated() {
+      return peeledObjectId != null;
+    }
+
+    @Override
+    public String toString() {
+      return "TagRef{" +
+          "name='" + name + '\'' +
+          ", objectId=" + objectId.name() +
+          (peeledObjectId != null ? ", peeledObjectId=" + peeledObjectId.name() : "") +
+          '}';
+    }
+  }
+}
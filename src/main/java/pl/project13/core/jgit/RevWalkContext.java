@@ -0,0 +1,457 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import pl.project13.core.log.LogInterface;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the JGit objects that are shared by all history walks of a single run.
+ *
+ * <p>All walks read through the same {@link ObjectReader}, and the {@link RevWalk}s themselves are
+ * reused between the individual steps (describe, closest tag, commit counts, ...). Commits that got
+ * parsed by one step don't need to be parsed again by the next one. Before a walk is handed out again,
+ * it gets reset, which clears every {@link org.eclipse.jgit.revwalk.RevFlag} that is not explicitly
+ * retained from the commits of the previous traversal.</p>
+ *
+ * <p>The {@link #countingWalk()} does not retain the commit bodies (message, author, committer),
+ * since it is only used to follow parents. This keeps the heap usage low for walks over large histories.</p>
+ *
+ * <p>The refs of the repository are read only once per context, see {@link #getRefSnapshot()}. The same
+ * goes for the tag index and the closest tag search behind describe, the closest tag name and the
+ * closest tag commit count, which all ask for the same thing.</p>
+ *
+ * <p>When git has written a commit-graph, all walks read the commits from it, see {@link #getCommitGraph()}.
+ * The searches that can be cut off early ({@link DescribeWalk}, {@link ContainsWalk}) get their
+ * {@link CommitCutoff} from here, backed by the generation numbers of the commit-graph. When a pack has a
+ * bitmap index, commit counts and tag containment are answered from it, see {@link #getReachabilityBitmaps()}.
+ * Otherwise the whole history can be walked on several threads, see {@link #parallelWalk(int)}.</p>
+ */
+public class RevWalkContext implements AutoCloseable {
+
+  private final Repository repository;
+  private final ObjectReader plainReader;
+  private final ObjectReader objectReader;
+  private RevWalk walk;
+  private RevWalk countingWalk;
+  private RefSnapshot refSnapshot;
+  private CommitGraphAccess commitGraph;
+  private Optional<ReachabilityBitmaps> reachabilityBitmaps;
+  private int clockSkewSlop = CommitCutoff.DEFAULT_CLOCK_SKEW_SLOP;
+  private final Map<String, TagIndex> tagIndexes = new HashMap<>();
+  private final Map<List<Object>, Optional<DescribeWalk.ClosestTag>> closestTags = new HashMap<>();
+  private final Map<List<Object>, Optional<RevCommit>> latestCommitsForPath = new HashMap<>();
+
+  public RevWalkContext(@NonNull Repository repository) {
+    this.repository = repository;
+    this.plainReader = repository.newObjectReader();
+    this.objectReader = CommitGraphAccess.readingFrom(plainReader, this::getCommitGraph);
+  }
+
+  @NonNull
+  public Repository getRepository() {
+    return repository;
+  }
+
+  /**
+   * @return the reader shared by all walks of this context, also to be used for abbreviating object ids
+   */
+  @NonNull
+  public ObjectReader getObjectReader() {
+    return objectReader;
+  }
+
+  /**
+   * @return a freshly reset walk that retains the bodies of the parsed commits
+   */
+  @NonNull
+  public RevWalk walk() {
+    if (walk == null) {
+      walk = new RevWalk(objectReader);
+    } else {
+      reset(walk);
+    }
+    return walk;
+  }
+
+  /**
+   * @return a freshly reset walk that only parses the commit headers (parents, tree, commit time)
+   */
+  @NonNull
+  public RevWalk countingWalk() {
+    if (countingWalk == null) {
+      countingWalk = new RevWalk(objectReader);
+      countingWalk.setRetainBody(false);
+    } else {
+      reset(countingWalk);
+    }
+    return countingWalk;
+  }
+
+  /**
+   * @return the tags and branches of the repository, read on first access and kept for the rest of the run
+   * @throws IOException if the refs could not be read
+   */
+  @NonNull
+  public RefSnapshot getRefSnapshot() throws IOException {
+    if (refSnapshot == null) {
+      if (countingWalk == null) {
+        countingWalk();
+      }
+      // peeling only parses objects, it doesn't disturb a traversal the counting walk might be in
+      refSnapshot = RefSnapshot.of(repository, countingWalk);
+    }
+    return refSnapshot;
+  }
+
+  /**
+   * Reads the commit-graph like git does, which uses it unless <pre>core.commitGraph</pre> is turned off,
+   * including the changed path filters unless <pre>commitGraph.readChangedPaths</pre> is turned off.
+   * JGit itself only reads either when the options are turned on explicitly.
+   *
+   * @return the commit-graph of the repository, {@link CommitGraphAccess#EMPTY} if there is none (or it can't be read)
+   */
+  @NonNull
+  CommitGraphAccess getCommitGraph() {
+    if (commitGraph == null) {
+      commitGraph = loadCommitGraph();
+    }
+    return commitGraph;
+  }
+
+  @NonNull
+  private CommitGraphAccess loadCommitGraph() {
+    try {
+      if (CommitGraphAccess.fileOf(repository) == null) {
+        return CommitGraphAccess.load(repository, plainReader, true);
+      }
+      Config config = repository.getConfig();
+      // like git, don't trust the commit-graph when the parents of commits might be rewritten
+      if (config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION, ConfigConstants.CONFIG_COMMIT_GRAPH, true)
+          && !mayRewriteParents()) {
+        return CommitGraphAccess.load(repository, plainReader, config.getBoolean("commitGraph", "readChangedPaths", true));
+      }
+    } catch (IOException e) {
+      // the commit-graph only speeds things up, the history can be read without it
+    }
+    return CommitGraphAccess.EMPTY;
+  }
+
+  /**
+   * @return the reachability bitmaps of the repository, {@code null} if no pack has a bitmap index
+   *         (or the parents of commits might differ from the ones the bitmaps were computed with)
+   */
+  @Nullable
+  public ReachabilityBitmaps getReachabilityBitmaps() {
+    if (reachabilityBitmaps == null) {
+      reachabilityBitmaps = Optional.ofNullable(loadReachabilityBitmaps());
+    }
+    return reachabilityBitmaps.orElse(null);
+  }
+
+  @Nullable
+  private ReachabilityBitmaps loadReachabilityBitmaps() {
+    try {
+      BitmapIndex bitmapIndex = plainReader.getBitmapIndex();
+      if (bitmapIndex != null && !mayRewriteParents()) {
+        return new ReachabilityBitmaps(bitmapIndex);
+      }
+    } catch (IOException e) {
+      // the bitmaps only speed things up, the history can be walked without them
+    }
+    return null;
+  }
+
+  /**
+   * @param threads the number of threads to walk the history with
+   * @return a walk over the whole history on the given number of threads, {@code null} for a single thread
+   *         (or when the parents of commits might differ from the stored ones)
+   */
+  @Nullable
+  public ParallelCommitWalk parallelWalk(int threads) {
+    if (threads < 2) {
+      return null;
+    }
+    try {
+      if (mayRewriteParents()) {
+        return null;
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return new ParallelCommitWalk(repository, getCommitGraph(), threads);
+  }
+
+  /**
+   * @return {@code true} if commits might have other parents than the ones stored with them, that is in a
+   *         shallow clone or with replace refs
+   * @throws IOException if the shallow commits or the refs could not be read
+   */
+  public boolean mayRewriteParents() throws IOException {
+    return !plainReader.getShallowCommits().isEmpty()
+        || !repository.getRefDatabase().getRefsByPrefix(Constants.R_REFS + "replace/").isEmpty();
+  }
+
+  /**
+   * @param clockSkewSlop the number of seconds commits may appear older than their ancestors
+   *                      when searches get cut off by commit time, negative to never trust the commit times
+   */
+  public void setClockSkewSlop(int clockSkewSlop) {
+    this.clockSkewSlop = clockSkewSlop;
+  }
+
+  /**
+   * @param targets the commits a search looks for, with their headers parsed
+   * @return the cutoff telling which commits can't reach any of the targets
+   */
+  @NonNull
+  public CommitCutoff cutoff(@NonNull Collection<RevCommit> targets) {
+    return new CommitCutoff(getCommitGraph(), clockSkewSlop, targets);
+  }
+
+  /**
+   * @param includeLightweightTags {@code true} to also index lightweight tags, like <pre>--tags</pre>
+   * @param matchPattern only tags whose full ref name matches this pattern are indexed
+   * @param log logger bridge to direct logs to
+   * @return the tag index for the given options, built on first access and kept for the rest of the run
+   * @throws IOException if the refs could not be read
+   */
+  @NonNull
+  public TagIndex getTagIndex(boolean includeLightweightTags, @NonNull String matchPattern, @NonNull LogInterface log) throws IOException {
+    String key = includeLightweightTags + ":" + matchPattern;
+    TagIndex tagIndex = tagIndexes.get(key);
+    if (tagIndex == null) {
+      tagIndex = TagIndex.of(getRefSnapshot().getTags(), includeLightweightTags, Pattern.compile(matchPattern), log);
+      tagIndexes.put(key, tagIndex);
+    }
+    return tagIndex;
+  }
+
+  /**
+   * @return the results of the closest tag searches of this run, see {@link DescribeWalk}
+   */
+  @NonNull
+  Map<List<Object>, Optional<DescribeWalk.ClosestTag>> getClosestTags() {
+    return closestTags;
+  }
+
+  /**
+   * @return the latest commits that touched a path, by the start of the search and the path, see
+   *         {@link JGitCommon#findLatestCommitForPath(RevWalkContext, org.eclipse.jgit.lib.ObjectId, String)}
+   */
+  @NonNull
+  Map<List<Object>, Optional<RevCommit>> getLatestCommitsForPath() {
+    return latestCommitsForPath;
+  }
+
+  /**
+   * Creates a new walk that only includes the commits touching the given path.
+   *
+   * Such a walk simplifies the history (it rewrites the parents of the commits it produces),
+   * so it can't share its commits with the other walks. It still reads through the shared reader.
+   *
+   * When the commit-graph carries changed path filters (see {@link CommitGraphMaintenance}), commits
+   * that certainly didn't touch the path are skipped without comparing their trees.
+   *
+   * @param path the path (relative to the work tree) to filter on
+   * @return a new walk, to be closed by the caller
+   */
+  @NonNull
+  public RevWalk pathWalk(@NonNull String path) {
+    return pathWalk(path, false);
+  }
+
+  /**
+   * Creates a new walk that only includes the commits touching the given path, see {@link #pathWalk(String)}.
+   *
+   * With {@code firstParent}, the walk only follows the first parent of merge commits, like
+   * <pre>git log --first-parent</pre>. A merge then touches the path when it differs from its first parent
+   * there, which is also what the changed path filters of the commit-graph tell.
+   *
+   * @param path the path (relative to the work tree) to filter on
+   * @param firstParent set to {@code true} to only follow the first parent of merge commits
+   * @return a new walk, to be closed by the caller
+   */
+  @NonNull
+  public RevWalk pathWalk(@NonNull String path, boolean firstParent) {
+    RevWalk pathWalk = new RevWalk(objectReader);
+    pathWalk.setRetainBody(false);
+    TreeFilter filter = AndTreeFilter.create(PathFilterGroup.createFromStrings(path), TreeFilter.ANY_DIFF);
+    if (firstParent) {
+      // JGit's tree filter compares merges with all of their parents, and may continue on a side branch
+      pathWalk.setFirstParent(true);
+      pathWalk.setRevFilter(new FirstParentPathFilter(filter, path));
+    } else {
+      pathWalk.setTreeFilter(new ChangedPathTreeFilter(filter, path));
+    }
+    return pathWalk;
+  }
+
+  /**
+   * @return the path like the changed path filters hold it, directories without a trailing slash
+   */
+  @NonNull
+  static byte[] changedPath(@NonNull String path) {
+    String directory = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    return directory.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * JGit only asks the changed path filters of the commit-graph when the tree filter tells which paths
+   * it looks for, which a path filter combined with {@link TreeFilter#ANY_DIFF} doesn't.
+   */
+  private static class ChangedPathTreeFilter extends TreeFilter {
+    private final TreeFilter filter;
+    private final String path;
+
+    private ChangedPathTreeFilter(@NonNull TreeFilter filter, @NonNull String path) {
+      this.filter = filter;
+      this.path = path;
+    }
+
+    @Override
+    public boolean include(TreeWalk walker) throws IOException {
+      return filter.include(walker);
+    }
+
+    @Override
+    public int matchFilter(TreeWalk walker) throws IOException {
+      return filter.matchFilter(walker);
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+      return filter.shouldBeRecursive();
+    }
+
+    @Override
+    public Optional<Set<byte[]>> getPathsBestEffort() {
+      // the filters hold the directories of the changed files as well
+      return Optional.of(Collections.singleton(changedPath(path)));
+    }
+
+    @Override
+    public TreeFilter clone() {
+      return new ChangedPathTreeFilter(filter.clone(), path);
+    }
+
+    @Override
+    public String toString() {
+      return filter.toString();
+    }
+  }
+
+  /**
+   * Includes the commits that differ from their first parent at a path, asking the changed path filters
+   * of the commit-graph before comparing the trees.
+   */
+  private class FirstParentPathFilter extends RevFilter {
+    private final TreeFilter filter;
+    private final byte[] changedPath;
+
+    private FirstParentPathFilter(@NonNull TreeFilter filter, @NonNull String path) {
+      this.filter = filter;
+      this.changedPath = changedPath(path);
+    }
+
+    @Override
+    public boolean include(RevWalk walker, RevCommit commit) throws IOException {
+      if (commit.getParentCount() > 0) {
+        CommitGraphAccess graph = getCommitGraph();
+        int position = graph.findGraphPosition(commit);
+        if (position >= 0 && !graph.mayHaveChanged(position, changedPath)) {
+          return false;
+        }
+      }
+      try (TreeWalk treeWalk = new TreeWalk(walker.getObjectReader())) {
+        treeWalk.setFilter(filter);
+        treeWalk.setRecursive(filter.shouldBeRecursive());
+        if (commit.getParentCount() > 0) {
+          RevCommit parent = commit.getParent(0);
+          walker.parseHeaders(parent);
+          treeWalk.addTree(parent.getTree());
+        } else {
+          treeWalk.addTree(new EmptyTreeIterator());
+        }
+        treeWalk.addTree(commit.getTree());
+        return treeWalk.next();
+      }
+    }
+
+    @Override
+    public boolean requiresCommitBody() {
+      return false;
+    }
+
+    @Override
+    public RevFilter clone() {
+      return new FirstParentPathFilter(filter.clone(), new String(changedPath, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+      return "FIRST_PARENT(" + filter + ")";
+    }
+  }
+
+  private static void reset(@NonNull RevWalk revWalk) {
+    revWalk.reset();
+    revWalk.setRevFilter(RevFilter.ALL);
+    revWalk.setTreeFilter(TreeFilter.ALL);
+    revWalk.sort(RevSort.NONE);
+    revWalk.setFirstParent(false);
+  }
+
+  @Override
+  public void close() {
+    if (walk != null) {
+      walk.close();
+    }
+    if (countingWalk != null) {
+      countingWalk.close();
+    }
+    objectReader.close();
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import pl.project13.core.log.LogInterface;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Maps commits to the tags that can be used to describe them.
+ *
+ * <p>Repositories may carry hundreds of thousands of tags, so the index avoids an object (and a boxed
+ * list of tags) per commit. The commit ids are kept as raw 32-bit words in a flat array, which is looked
+ * up through an open-addressing hash table. The tags of a commit are chained through a flat array of
+ * tag indexes.</p>
+ *
+ * <p>When multiple tags point at the same commit, the most recently created annotated tag wins. Parsing
+ * a tag object for its date is expensive, hence the name of a commit is only resolved when it is asked
+ * for, which usually only happens for the few commits that win the closest tag search.</p>
+ */
+public class TagIndex {
+
+  /**
+   * Number of 32-bit words of an object id.
+   */
+  private static final int WORDS = 5;
+
+  private static final long LIGHTWEIGHT_TAG_DATE = Long.MIN_VALUE;
+  private static final long UNDATED_ANNOTATED_TAG_DATE = Long.MIN_VALUE + 1;
+
+  private final RefSnapshot.TagRef[] tags;
+  private final int[] nextTag;
+
+  private final int[] table;
+  private final int[] ids;
+  private final int[] firstTag;
+  private final String[] names;
+  private int size;
+
+  private TagIndex(RefSnapshot.TagRef[] tags) {
+    this.tags = tags;
+    this.nextTag = new int[tags.length];
+
+    int capacity = Integer.highestOneBit(Math.max(tags.length, 8) * 2 - 1) << 1;
+    this.table = new int[capacity];
+    this.ids = new int[tags.length * WORDS];
+    this.firstTag = new int[tags.length];
+    this.names = new String[tags.length];
+  }
+
+  /**
+   * Indexes the given tags by the commit they finally point at.
+   *
+   * @param tagRefs the tags of the repository, ordered by their name
+   * @param includeLightweightTags {@code true} to also index lightweight tags, like <pre>--tags</pre>
+   * @param matchPattern only tags whose full ref name matches this pattern are indexed
+   * @param log logger bridge to direct logs to
+   * @return the index
+   */
+  @NonNull
+  public static TagIndex of(@NonNull List<RefSnapshot.TagRef> tagRefs, boolean includeLightweightTags, @NonNull Pattern matchPattern, @NonNull LogInterface log) {
+    List<RefSnapshot.TagRef> candidates = new ArrayList<>();
+    for (RefSnapshot.TagRef tagRef : tagRefs) {
+      if (!matchPattern.matcher(tagRef.getName()).matches()) {
+        log.info(String.format("Skipping tagRef with name [%s] as it doesn't match [%s]", tagRef.getName(), matchPattern));
+        continue;
+      }
+      if (tagRef.isAnnotated() || includeLightweightTags) {
+        candidates.add(tagRef);
+      }
+    }
+
+    TagIndex index = new TagIndex(candidates.toArray(new RefSnapshot.TagRef[0]));
+    // added in reverse, so that the tags of a commit are chained in the order of their names
+    for (int tag = index.tags.length - 1; tag >= 0; tag--) {
+      index.add(tag);
+    }
+    return index;
+  }
+
+  private void add(int tag) {
+    AnyObjectId commitId = tags[tag].getPeeledObjectId();
+    int slot = slotOf(commitId);
+    int entry = table[slot] - 1;
+    if (entry < 0) {
+      entry = size++;
+      commitId.copyRawTo(ids, entry * WORDS);
+      table[slot] = entry + 1;
+      nextTag[tag] = -1;
+    } else {
+      nextTag[tag] = firstTag[entry];
+    }
+    firstTag[entry] = tag;
+  }
+
+  private int slotOf(@NonNull AnyObjectId commitId) {
+    int mask = table.length - 1;
+    // object ids are uniformly distributed, their hash code is part of the id itself
+    int slot = commitId.hashCode() & mask;
+    while (table[slot] != 0 && commitId.compareTo(ids, (table[slot] - 1) * WORDS) != 0) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * @return {@code true} if no tag was indexed at all
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the number of tagged commits
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param entry the number of a tagged commit, from {@code 0} to {@link #size()} (exclusive)
+   * @return the id of the tagged commit
+   */
+  @NonNull
+  public ObjectId getCommitId(int entry) {
+    return ObjectId.fromRaw(ids, entry * WORDS);
+  }
+
+  /**
+   * @param entry the number of a tagged commit, from {@code 0} to {@link #size()} (exclusive)
+   * @return the tags of the tagged commit, ordered by their name
+   */
+  @NonNull
+  List<RefSnapshot.TagRef> getTags(int entry) {
+    List<RefSnapshot.TagRef> entryTags = new ArrayList<>();
+    for (int tag = firstTag[entry]; tag >= 0; tag = nextTag[tag]) {
+      entryTags.add(tags[tag]);
+    }
+    return entryTags;
+  }
+
+  /**
+   * @param commitId the commit to check
+   * @return {@code true} if at least one indexed tag points at the given commit
+   */
+  public boolean contains(@NonNull AnyObjectId commitId) {
+    return table[slotOf(commitId)] != 0;
+  }
+
+  /**
+   * Resolves the name of the tag that describes the given commit.
+   * Out of multiple tags, the most recently created annotated tag wins, lightweight tags come last.
+   *
+   * @param commitId the commit to look up
+   * @param walk the walk to parse the annotated tags with, must retain the bodies of the parsed objects
+   * @param log logger bridge to direct logs to
+   * @return the name of the tag, {@code null} if no (readable) tag points at the given commit
+   */
+  @Nullable
+  public String nameOf(@NonNull AnyObjectId commitId, @NonNull RevWalk walk, @NonNull LogInterface log) {
+    int entry = table[slotOf(commitId)] - 1;
+    if (entry < 0) {
+      return null;
+    }
+    if (names[entry] == null) {
+      names[entry] = resolveName(entry, walk, log);
+    }
+    return names[entry];
+  }
+
+  @Nullable
+  private String resolveName(int entry, @NonNull RevWalk walk, @NonNull LogInterface log) {
+    String name = null;
+    long date = 0;
+    for (int tag = firstTag[entry]; tag >= 0; tag = nextTag[tag]) {
+      RefSnapshot.TagRef tagRef = tags[tag];
+      String candidateName;
+      long candidateDate;
+      if (tagRef.isAnnotated()) {
+        try {
+          RevTag revTag = walk.parseTag(tagRef.getObjectId());
+          PersonIdent taggerIdent = revTag.getTaggerIdent();
+          candidateName = revTag.getTagName();
+          candidateDate = taggerIdent != null ? taggerIdent.getWhen().getTime() : UNDATED_ANNOTATED_TAG_DATE;
+        } catch (IOException e) {
+          log.info(String.format("Failed while parsing [%s] -- ", tagRef));
+          continue;
+        }
+      } else {
+        candidateName = tagRef.getShortName();
+        candidateDate = LIGHTWEIGHT_TAG_DATE;
+      }
+      // on equal dates the first tag (by name) wins
+      if (name == null || candidateDate > date) {
+        name = candidateName;
+        date = candidateDate;
+      }
+    }
+    return name;
+  }
+}
@@ -23,6 +23,13 @@ import org.eclipse.jgit.revwalk.RevTag;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 
+/**
+ * A tag together with the date it was created at.
+ *
+ * @deprecated tags are indexed by the commit they point at in a {@link pl.project13.core.jgit.TagIndex},
+ *             which only parses the date of a tag once it competes for the name of a commit
+ */
+@Deprecated
 public class DatedRevTag {
 
   public final AnyObjectId id;
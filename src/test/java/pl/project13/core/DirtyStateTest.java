@@ -0,0 +1,156 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pl.project13.core.git.GitDescribeConfig;
+import pl.project13.core.jgit.JGitRepositoryCache;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirtyStateTest {
+  @TempDir
+  public Path folder;
+
+  @AfterEach
+  public void tearDown() {
+    JGitRepositoryCache.clear();
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  public void runPlugin_shouldMarkTheDescribeLikeGitDirty(boolean useNativeGit) throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      write("README", "readme");
+      git.add().addFilepattern("README").call();
+      git.commit().setMessage("initial").call();
+      git.tag().setName("v1.0").setMessage("v1.0").call();
+      File dotGitDirectory = git.getRepository().getDirectory();
+
+      // when
+      Properties clean = runPlugin(dotGitDirectory, useNativeGit);
+      write("README", "changed");
+      Properties dirty = runPlugin(dotGitDirectory, useNativeGit);
+
+      // then
+      assertThat(clean.getProperty("git.dirty")).isEqualTo("false");
+      assertThat(clean.getProperty("git.commit.id.describe")).isEqualTo("v1.0");
+      assertThat(dirty.getProperty("git.dirty")).isEqualTo("true");
+      assertThat(dirty.getProperty("git.commit.id.describe")).isEqualTo("v1.0-DEV");
+      assertThat(dirty.getProperty("git.commit.id.describe-short")).isEqualTo("v1.0-DEV");
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  public void runPlugin_shouldNotMarkTheDescribeForUntrackedFiles(boolean useNativeGit) throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      write("README", "readme");
+      git.add().addFilepattern("README").call();
+      git.commit().setMessage("initial").call();
+      git.tag().setName("v1.0").setMessage("v1.0").call();
+
+      // when
+      write("untracked.txt", "untracked");
+      Properties properties = runPlugin(git.getRepository().getDirectory(), useNativeGit);
+
+      // then
+      // like git describe --dirty, while git status (behind git.dirty of native git) lists untracked files
+      assertThat(properties.getProperty("git.commit.id.describe")).isEqualTo("v1.0");
+      assertThat(properties.getProperty("git.dirty")).isEqualTo(Boolean.toString(useNativeGit));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  public void runPlugin_shouldTellTheDirtyStateOfEachModule(boolean useNativeGit) throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      write("README", "readme");
+      write("module-a/a.txt", "a");
+      write("module-b/b.txt", "b");
+      write("module-b/nested/c.txt", "c");
+      git.add().addFilepattern(".").call();
+      git.commit().setMessage("initial").call();
+      File dotGitDirectory = git.getRepository().getDirectory();
+      List<File> modules = List.of(folder.toFile(), folder.resolve("module-a").toFile(),
+          folder.resolve("module-b").toFile(), folder.resolve("module-b/nested").toFile());
+
+      // when
+      write("module-b/nested/c.txt", "changed");
+      List<String> firstBuild = runModules(dotGitDirectory, useNativeGit, modules, "first build");
+      write("module-b/nested/c.txt", "c");
+      write("module-a/a.txt", "changed");
+      List<String> secondBuild = runModules(dotGitDirectory, useNativeGit, modules, "second build");
+
+      // then
+      assertThat(firstBuild).containsExactly("true", "false", "true", "true");
+      assertThat(secondBuild).containsExactly("true", "true", "false", "false");
+    }
+  }
+
+  private static List<String> runModules(File dotGitDirectory, boolean useNativeGit, List<File> modules,
+      String buildId) throws Exception {
+    List<String> dirtyStates = new ArrayList<>();
+    for (File module : modules) {
+      GitCommitIdTestCallback cb = new GitCommitIdTestCallback()
+          .setDotGitDirectory(dotGitDirectory)
+          .setUseNativeGit(useNativeGit)
+          .setPerModuleVersions(true)
+          .setProjectBaseDir(module)
+          .setModuleBaseDirs(modules)
+          .setBuildId(buildId);
+      Properties properties = new Properties();
+      GitCommitIdPlugin.runPlugin(cb.build(), properties);
+      dirtyStates.add(properties.getProperty("git.dirty"));
+    }
+    return dirtyStates;
+  }
+
+  private void write(String path, String content) throws Exception {
+    Path file = folder.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Properties runPlugin(File dotGitDirectory, boolean useNativeGit) throws Exception {
+    GitDescribeConfig gitDescribeConfig = new GitDescribeConfig();
+    gitDescribeConfig.setDirty("-DEV");
+    GitCommitIdTestCallback cb = new GitCommitIdTestCallback()
+        .setDotGitDirectory(dotGitDirectory)
+        .setUseNativeGit(useNativeGit)
+        .setGitDescribeConfig(gitDescribeConfig);
+    Properties properties = new Properties();
+    GitCommitIdPlugin.runPlugin(cb.build(), properties);
+    return properties;
+  }
+}
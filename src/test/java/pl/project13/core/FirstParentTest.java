@@ -0,0 +1,110 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pl.project13.core.git.GitDescribeConfig;
+import pl.project13.core.jgit.JGitRepositoryCache;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FirstParentTest {
+  @TempDir
+  public Path folder;
+
+  @AfterEach
+  public void tearDown() {
+    JGitRepositoryCache.clear();
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  public void runPlugin_shouldFollowTheFirstParentsOnly(boolean useNativeGit) throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      commitFile(git, "README", "readme");
+      commitFile(git, "module/a.txt", "module");
+      git.tag().setName("v1.0").setMessage("v1.0").call();
+      git.branchCreate().setName("feature").call();
+      git.checkout().setName("feature").call();
+      commitFile(git, "module/b.txt", "feature-1");
+      RevCommit feature = commitFile(git, "module/b.txt", "feature-2");
+      git.checkout().setName("master").call();
+      commitFile(git, "README", "main");
+      git.merge().include(feature).setFastForward(MergeCommand.FastForwardMode.NO_FF).setMessage("merge feature").call();
+      RevCommit merge = git.log().setMaxCount(1).call().iterator().next();
+      commitFile(git, "README", "after merge");
+      File dotGitDirectory = git.getRepository().getDirectory();
+
+      // when
+      Properties full = runPlugin(dotGitDirectory, useNativeGit, false, null);
+      Properties firstParent = runPlugin(dotGitDirectory, useNativeGit, true, null);
+      Properties fullModule = runPlugin(dotGitDirectory, useNativeGit, false, "module");
+      Properties firstParentModule = runPlugin(dotGitDirectory, useNativeGit, true, "module");
+
+      // then
+      assertThat(full.getProperty("git.total.commit.count")).isEqualTo("7");
+      assertThat(full.getProperty("git.closest.tag.commit.count")).isEqualTo("5");
+      assertThat(firstParent.getProperty("git.total.commit.count")).isEqualTo("5");
+      assertThat(firstParent.getProperty("git.closest.tag.name")).isEqualTo("v1.0");
+      assertThat(firstParent.getProperty("git.closest.tag.commit.count")).isEqualTo("3");
+      assertThat(firstParent.getProperty("git.commit.id.describe")).startsWith("v1.0-3-g");
+      // the merge takes the changes of the feature branch over, it is the last change on the first parents
+      assertThat(fullModule.getProperty("git.commit.id")).isEqualTo(feature.name());
+      assertThat(fullModule.getProperty("git.total.commit.count")).isEqualTo("3");
+      assertThat(firstParentModule.getProperty("git.commit.id")).isEqualTo(merge.name());
+      assertThat(firstParentModule.getProperty("git.total.commit.count")).isEqualTo("2");
+    }
+  }
+
+  private static RevCommit commitFile(Git git, String path, String content) throws Exception {
+    Path file = git.getRepository().getWorkTree().toPath().resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    git.add().addFilepattern(path).call();
+    return git.commit().setMessage(path + ": " + content).call();
+  }
+
+  private static Properties runPlugin(File dotGitDirectory, boolean useNativeGit, boolean firstParent, String module) throws Exception {
+    GitDescribeConfig gitDescribeConfig = new GitDescribeConfig();
+    gitDescribeConfig.setTags(true);
+    gitDescribeConfig.setFirstParent(firstParent);
+    GitCommitIdTestCallback cb = new GitCommitIdTestCallback()
+        .setDotGitDirectory(dotGitDirectory)
+        .setUseNativeGit(useNativeGit)
+        .setGitDescribeConfig(gitDescribeConfig);
+    if (module != null) {
+      cb.setPerModuleVersions(true).setProjectBaseDir(new File(dotGitDirectory.getParentFile(), module));
+    }
+    Properties properties = new Properties();
+    GitCommitIdPlugin.runPlugin(cb.build(), properties);
+    return properties;
+  }
+}
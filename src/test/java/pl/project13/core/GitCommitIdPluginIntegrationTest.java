@@ -32,6 +32,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import pl.project13.core.git.GitDescribeConfig;
+import pl.project13.core.jgit.JGitRepositoryCache;
 import pl.project13.core.util.GenericFileManager;
 import java.io.File;
 import java.io.FileInputStream;
@@ -65,6 +66,7 @@ public class GitCommitIdPluginIntegrationTest {
 
   @AfterEach
   public void tearDown() throws Exception {
+    JGitRepositoryCache.clear();
     if (sandbox != null) {
       deleteDir(sandbox);
     }
@@ -60,6 +60,10 @@ public class GitCommitIdTestCallback {
   private boolean shouldPropertiesEscapeUnicode = false;
   private boolean shouldFailOnNoGitDirectory = false;
   private boolean perModuleVersions = false;
+  private boolean useHistoryIndex = false;
+  private File historyIndexDirectory;
+  private Collection<File> moduleBaseDirs = Collections.emptyList();
+  private String buildId = null;
   private File moduleBaseDir;
 
   public GitCommitIdTestCallback() {
@@ -207,6 +211,26 @@ public class GitCommitIdTestCallback {
     return this;
   }
 
+  public GitCommitIdTestCallback setUseHistoryIndex(boolean useHistoryIndex) {
+    this.useHistoryIndex = useHistoryIndex;
+    return this;
+  }
+
+  public GitCommitIdTestCallback setHistoryIndexDirectory(File historyIndexDirectory) {
+    this.historyIndexDirectory = historyIndexDirectory;
+    return this;
+  }
+
+  public GitCommitIdTestCallback setBuildId(String buildId) {
+    this.buildId = buildId;
+    return this;
+  }
+
+  public GitCommitIdTestCallback setModuleBaseDirs(Collection<File> moduleBaseDirs) {
+    this.moduleBaseDirs = moduleBaseDirs;
+    return this;
+  }
+
   public GitCommitIdPlugin.Callback build() {
     return new GitCommitIdPlugin.Callback() {
       @Override
@@ -365,6 +389,26 @@ public class GitCommitIdTestCallback {
       public boolean isPerModuleVersions() {
         return perModuleVersions;
       }
+
+      @Override
+      public boolean shouldUseHistoryIndex() {
+        return useHistoryIndex;
+      }
+
+      @Override
+      public File getHistoryIndexDirectory() {
+        return historyIndexDirectory;
+      }
+
+      @Override
+      public Collection<File> getModuleBaseDirs() {
+        return moduleBaseDirs;
+      }
+
+      @Override
+      public String getBuildId() {
+        return buildId;
+      }
     };
   }
 
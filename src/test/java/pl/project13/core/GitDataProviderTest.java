@@ -18,11 +18,13 @@
 package pl.project13.core;
 
 import org.junit.jupiter.api.Test;
+import pl.project13.core.git.GitDescribeConfig;
 import pl.project13.core.log.LogInterface;
 
 import java.util.Properties;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
@@ -40,6 +42,26 @@ public class GitDataProviderTest  {
     assertShortDescribe("", "");
   }
 
+  @Test
+  public void validateDescribeCandidates_shouldAcceptTheSameRangeForBothProviders() throws GitCommitIdExecutionException {
+    // given
+    TestGitDataProvider gitDataProvider = spy(TestGitDataProvider.class);
+    GitDescribeConfig gitDescribe = new GitDescribeConfig();
+
+    // when / then
+    gitDataProvider.validateDescribeCandidates(null);
+    for (int candidates : new int[] {0, GitDescribeConfig.MAX_CANDIDATES}) {
+      gitDescribe.setCandidates(candidates);
+      gitDataProvider.validateDescribeCandidates(gitDescribe);
+    }
+    for (int candidates : new int[] {-1, GitDescribeConfig.MAX_CANDIDATES + 1}) {
+      gitDescribe.setCandidates(candidates);
+      assertThatThrownBy(() -> gitDataProvider.validateDescribeCandidates(gitDescribe))
+          .isInstanceOf(GitCommitIdExecutionException.class)
+          .hasMessageContaining("<candidates/>");
+    }
+  }
+
   private void assertShortDescribe(String commitDescribe, String expectedShortDescribe) throws GitCommitIdExecutionException {
     Properties prop = new Properties();
     if (commitDescribe != null) {
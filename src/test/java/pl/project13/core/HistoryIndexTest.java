@@ -0,0 +1,187 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import pl.project13.core.jgit.JGitRepositoryCache;
+import pl.project13.core.log.LogInterface;
+import pl.project13.core.util.Pair;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class HistoryIndexTest {
+  @TempDir
+  public Path folder;
+
+  @AfterEach
+  public void tearDown() {
+    JGitRepositoryCache.clear();
+  }
+
+  @Test
+  public void save_shouldKeepTheClosestTagsOfTheCurrentTagsOnly() {
+    // given
+    LogInterface log = mock(LogInterface.class);
+    String oldTags = HistoryIndex.tagsKey(List.of("1111 refs/tags/v1.0"), null);
+    String newTags = HistoryIndex.tagsKey(List.of("1111 refs/tags/v1.0", "2222 refs/tags/v2.0"), null);
+    HistoryIndex index = HistoryIndex.load(folder.toFile(), false, log);
+    index.putTotalCommitCount("aaaa", 10);
+    index.putClosestTag(oldTags, "aaaa", "v1.0", "3");
+    index.putClosestTag(oldTags, "bbbb", "", "");
+
+    // when
+    index.putClosestTag(newTags, "cccc", "v2.0", "0");
+    index.save();
+    HistoryIndex loaded = HistoryIndex.load(folder.toFile(), false, log);
+
+    // then
+    assertThat(newTags).isNotEqualTo(oldTags);
+    assertThat(loaded.getTotalCommitCount("aaaa")).isEqualTo(10L);
+    assertThat(loaded.findIndexedCommit(List.of("cccc", "bbbb", "aaaa"))).isEqualTo("aaaa");
+    assertThat(loaded.getClosestTag(newTags, "cccc")).isEqualTo(Pair.of("v2.0", "0"));
+    assertThat(loaded.getClosestTag(oldTags, "aaaa")).isNull();
+    assertThat(loaded.getClosestTag(oldTags, "bbbb")).isNull();
+  }
+
+  @Test
+  public void putTotalCommitCount_shouldOnlyKeepTheCountsClosestToTheTips() {
+    // given
+    LogInterface log = mock(LogInterface.class);
+    HistoryIndex index = HistoryIndex.load(folder.toFile(), false, log);
+    for (int count = 1; count <= HistoryIndex.MAX_INDEXED_COUNTS; count++) {
+      index.putTotalCommitCount("commit-" + count, count);
+    }
+
+    // when
+    index.putTotalCommitCount("tip", HistoryIndex.MAX_INDEXED_COUNTS + 1);
+    index.save();
+    HistoryIndex loaded = HistoryIndex.load(folder.toFile(), false, log);
+
+    // then
+    assertThat(loaded.getTotalCommitCount("tip")).isEqualTo(HistoryIndex.MAX_INDEXED_COUNTS + 1L);
+    assertThat(loaded.getTotalCommitCount("commit-2")).isEqualTo(2L);
+    assertThat(loaded.getTotalCommitCount("commit-1")).isNull();
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  public void runPlugin_shouldReuseTheIndexedHistory(boolean useNativeGit) throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      for (int i = 1; i <= 5; i++) {
+        git.commit().setMessage("commit-" + i).setAllowEmpty(true).call();
+      }
+      git.tag().setName("v1.0").setMessage("v1.0").call();
+      git.commit().setMessage("commit-6").setAllowEmpty(true).call();
+      RevCommit head = git.commit().setMessage("commit-7").setAllowEmpty(true).call();
+      File dotGitDirectory = git.getRepository().getDirectory();
+      GitCommitIdPlugin.Callback cb = new GitCommitIdTestCallback()
+          .setDotGitDirectory(dotGitDirectory)
+          .setUseNativeGit(useNativeGit)
+          .setUseHistoryIndex(true)
+          .build();
+
+      // when
+      Properties first = new Properties();
+      GitCommitIdPlugin.runPlugin(cb, first);
+
+      // then
+      assertThat(first.getProperty("git.total.commit.count")).isEqualTo("7");
+      assertThat(first.getProperty("git.closest.tag.name")).isEqualTo("v1.0");
+      assertThat(first.getProperty("git.closest.tag.commit.count")).isEqualTo("2");
+      HistoryIndex index = HistoryIndex.load(dotGitDirectory, false, mock(LogInterface.class));
+      assertThat(index.getTotalCommitCount(head.name())).isEqualTo(7L);
+
+      // when
+      // an indexed count is taken as is, and the count of a new commit is derived from it
+      index.putTotalCommitCount(head.name(), 42);
+      index.save();
+      Properties rebuilt = new Properties();
+      GitCommitIdPlugin.runPlugin(cb, rebuilt);
+      RevCommit next = git.commit().setMessage("commit-8").setAllowEmpty(true).call();
+      Properties afterCommit = new Properties();
+      GitCommitIdPlugin.runPlugin(cb, afterCommit);
+      git.tag().setName("v2.0").setMessage("v2.0").call();
+      Properties afterTag = new Properties();
+      GitCommitIdPlugin.runPlugin(cb, afterTag);
+
+      // then
+      assertThat(rebuilt.getProperty("git.total.commit.count")).isEqualTo("42");
+      assertThat(afterCommit.getProperty("git.total.commit.count")).isEqualTo("43");
+      assertThat(afterCommit.getProperty("git.closest.tag.commit.count")).isEqualTo("3");
+      assertThat(afterTag.getProperty("git.closest.tag.name")).isEqualTo("v2.0");
+      assertThat(afterTag.getProperty("git.closest.tag.commit.count")).isEqualTo("0");
+      assertThat(HistoryIndex.load(dotGitDirectory, false, mock(LogInterface.class)).getTotalCommitCount(next.name())).isEqualTo(43L);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void runPlugin_shouldCountTheDeepenedHistoryOfAShallowClone(boolean useNativeGit) throws Exception {
+    // given
+    File origin = folder.resolve("origin").toFile();
+    File clone = folder.resolve("clone").toFile();
+    try (Git git = Git.init().setDirectory(origin).call()) {
+      for (int i = 1; i <= 5; i++) {
+        git.commit().setMessage("commit-" + i).setAllowEmpty(true).call();
+      }
+    }
+    runGit(folder.toFile(), "clone", "--depth", "2", origin.toPath().toUri().toString(), clone.getName());
+    File dotGitDirectory = new File(clone, ".git");
+    GitCommitIdPlugin.Callback cb = new GitCommitIdTestCallback()
+        .setDotGitDirectory(dotGitDirectory)
+        .setUseNativeGit(useNativeGit)
+        .setUseHistoryIndex(true)
+        .build();
+
+    // when
+    Properties shallow = new Properties();
+    GitCommitIdPlugin.runPlugin(cb, shallow);
+    runGit(clone, "fetch", "--deepen", "2");
+    Properties deepened = new Properties();
+    GitCommitIdPlugin.runPlugin(cb, deepened);
+
+    // then
+    assertThat(shallow.getProperty("git.total.commit.count")).isEqualTo("2");
+    assertThat(deepened.getProperty("git.total.commit.count")).isEqualTo("4");
+  }
+
+  private static void runGit(File directory, String... args) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.addAll(Arrays.asList(args));
+    Process process = new ProcessBuilder(command).directory(directory).redirectErrorStream(true).start();
+    String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    assertThat(process.waitFor()).as(output).isZero();
+  }
+}
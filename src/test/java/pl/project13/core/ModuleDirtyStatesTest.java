@@ -0,0 +1,155 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ModuleDirtyStatesTest {
+  private static final List<String> MODULES = List.of("a", "b", "c");
+
+  private final AtomicInteger scans = new AtomicInteger();
+
+  @Test
+  public void isDirty_shouldShareTheScanWithTheOtherModules() throws Exception {
+    // given
+    List<Object> scanKey = List.of(new Object());
+
+    // when
+    boolean a = ModuleDirtyStates.isDirty(scanKey, "build", "head", "a", MODULES, this::scanDirtyB);
+    boolean b = ModuleDirtyStates.isDirty(scanKey, "build", "head", "b", MODULES, this::scanDirtyB);
+    boolean c = ModuleDirtyStates.isDirty(scanKey, "build", "head", "c", MODULES, this::scanDirtyB);
+
+    // then
+    assertThat(List.of(a, b, c)).containsExactly(false, true, false);
+    assertThat(scans).hasValue(1);
+  }
+
+  @Test
+  public void isDirty_shouldShareTheScanForTheWholeBuild() throws Exception {
+    // given
+    List<Object> scanKey = List.of(new Object());
+    ModuleDirtyStates.isDirty(scanKey, "build", "head", "a", MODULES, this::scanDirtyB);
+
+    // when
+    // the other modules of a sequential build ask long after the scan, while other repositories get scanned
+    for (int i = 0; i < 10; i++) {
+      ModuleDirtyStates.isDirty(List.of(new Object()), "build", "head", "a", MODULES, modules -> Set.of());
+    }
+    boolean b = ModuleDirtyStates.isDirty(scanKey, "build", "head", "b", MODULES, this::scanDirtyB);
+    boolean c = ModuleDirtyStates.isDirty(scanKey, "build", "head", "c", MODULES, this::scanDirtyB);
+
+    // then
+    assertThat(List.of(b, c)).containsExactly(true, false);
+    assertThat(scans).hasValue(1);
+  }
+
+  @Test
+  public void isDirty_shouldScanAgainWhenAModuleAsksAgain() throws Exception {
+    // given
+    List<Object> scanKey = List.of(new Object());
+    ModuleDirtyStates.isDirty(scanKey, "build", "head", "a", MODULES, this::scanDirtyB);
+
+    // when
+    ModuleDirtyStates.isDirty(scanKey, "build", "head", "a", MODULES, this::scanDirtyB);
+    ModuleDirtyStates.isDirty(scanKey, "build", "head", "b", MODULES, this::scanDirtyB);
+
+    // then
+    assertThat(scans).hasValue(2);
+  }
+
+  @Test
+  public void isDirty_shouldNotHandOutTheStatesOfAnotherHead() throws Exception {
+    // given
+    List<Object> scanKey = List.of(new Object());
+    ModuleDirtyStates.isDirty(scanKey, "build", "before commit", "a", MODULES, this::scanDirtyB);
+
+    // when
+    ModuleDirtyStates.isDirty(scanKey, "build", "after commit", "b", MODULES, this::scanDirtyB);
+
+    // then
+    assertThat(scans).hasValue(2);
+  }
+
+  @Test
+  public void isDirty_shouldNotHandOutTheStatesOfAnEarlierBuild() throws Exception {
+    // given
+    List<Object> scanKey = List.of(new Object());
+    // the build fails after the first module
+    ModuleDirtyStates.isDirty(scanKey, "first build", "head", "a", MODULES, this::scanDirtyB);
+
+    // when
+    boolean b = ModuleDirtyStates.isDirty(scanKey, "second build", "head", "b", MODULES, modules -> {
+      scans.incrementAndGet();
+      return Set.of();
+    });
+
+    // then
+    assertThat(b).isFalse();
+    assertThat(scans).hasValue(2);
+  }
+
+  @Test
+  public void isDirty_shouldNotWaitForTheScanOfAnotherRepository() throws Exception {
+    // given
+    CountDownLatch scanStarted = new CountDownLatch(1);
+    CountDownLatch finishScan = new CountDownLatch(1);
+    CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> {
+      try {
+        return ModuleDirtyStates.isDirty(List.of(new Object()), "build", "head", "a", MODULES, modules -> {
+          scanStarted.countDown();
+          try {
+            finishScan.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return Set.of("a");
+        });
+      } catch (GitCommitIdExecutionException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    assertThat(scanStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+    try {
+      // when
+      boolean other = ModuleDirtyStates.isDirty(List.of(new Object()), "build", "head", "b", MODULES, this::scanDirtyB);
+
+      // then
+      assertThat(other).isTrue();
+      assertThat(blocked).isNotDone();
+    } finally {
+      finishScan.countDown();
+    }
+    assertThat(blocked.get(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private Set<String> scanDirtyB(Collection<String> modules) {
+    scans.incrementAndGet();
+    return Set.of("b");
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommitCutoffTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void cannotReach_shouldAllowForClockSkew() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      RevCommit parent = commit(git, "parent", 100);
+      // committed with a clock running behind
+      commit(git, "skewed", 10);
+      RevCommit head = commit(git, "head", 11);
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        RevWalk walk = context.countingWalk();
+        List<RevCommit> targets = List.of(walk.parseCommit(parent));
+
+        // when
+        CommitCutoff withoutSlop = new CommitCutoff(CommitGraphAccess.EMPTY, 0, targets);
+        CommitCutoff withSlop = new CommitCutoff(CommitGraphAccess.EMPTY, CommitCutoff.NAME_REV_CLOCK_SKEW_SLOP, targets);
+        CommitCutoff withoutTimes = new CommitCutoff(CommitGraphAccess.EMPTY, -1, targets);
+
+        // then
+        assertThat(withoutSlop.cannotReach(walk.parseCommit(head))).isTrue();
+        assertThat(withSlop.cannotReach(walk.parseCommit(head))).isFalse();
+        assertThat(withoutTimes.cannotReach(walk.parseCommit(head))).isFalse();
+        assertThat(new CommitCutoff(CommitGraphAccess.EMPTY, 0, List.of()).cannotReach(walk.parseCommit(head))).isTrue();
+      }
+    }
+  }
+
+  @Test
+  public void cannotReach_shouldPreferTheGenerationNumbersOfTheCommitGraph() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      RevCommit parent = commit(git, "parent", 100);
+      commit(git, "skewed", 10);
+      RevCommit head = commit(git, "head", 11);
+      StoredConfig config = git.getRepository().getConfig();
+      config.setBoolean("core", null, "commitGraph", true);
+      config.setBoolean("gc", null, "writeCommitGraph", true);
+      config.save();
+      git.gc().call();
+      // git reads the commit-graph by default, JGit only when asked to
+      config.unset("core", null, "commitGraph");
+      config.save();
+      RevCommit newer = commit(git, "newer", 12);
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        context.setClockSkewSlop(0);
+        RevWalk walk = context.countingWalk();
+
+        // when
+        CommitCutoff toParent = context.cutoff(List.of(walk.parseCommit(parent)));
+        CommitCutoff toHead = context.cutoff(List.of(walk.parseCommit(head)));
+        CommitCutoff toNewer = context.cutoff(List.of(walk.parseCommit(newer)));
+
+        // then
+        assertThat(context.getCommitGraph().getCommitCount()).isEqualTo(3);
+        assertThat(toParent.cannotReach(walk.parseCommit(head))).isFalse();
+        assertThat(toHead.cannotReach(walk.parseCommit(parent))).isTrue();
+        assertThat(toNewer.cannotReach(walk.parseCommit(head))).isTrue();
+        // not part of the commit-graph, only the commit times tell
+        assertThat(toParent.cannotReach(walk.parseCommit(newer))).isTrue();
+      }
+    }
+  }
+
+  private static RevCommit commit(Git git, String message, long minutes) throws Exception {
+    return git.commit().setMessage(message).setAllowEmpty(true).setCommitter(ident(minutes)).call();
+  }
+
+  private static PersonIdent ident(long minutes) {
+    return new PersonIdent("committer", "committer@example.com", new Date(minutes * 60_000L), TimeZone.getTimeZone("UTC"));
+  }
+}
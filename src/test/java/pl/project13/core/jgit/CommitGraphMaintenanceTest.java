@@ -0,0 +1,92 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.project13.core.log.LogInterface;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class CommitGraphMaintenanceTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void refresh_shouldOnlyWriteTheCommitGraphWhenItMissesCommits() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      git.commit().setMessage("first").setAllowEmpty(true).call();
+      git.commit().setMessage("second").setAllowEmpty(true).call();
+
+      // when
+      boolean written;
+      boolean writtenAgain;
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        written = CommitGraphMaintenance.refresh(context, log);
+      }
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        assertThat(context.getCommitGraph().getCommitCount()).isEqualTo(2);
+        writtenAgain = CommitGraphMaintenance.refresh(context, log);
+      }
+      RevCommit third = git.commit().setMessage("third").setAllowEmpty(true).call();
+      boolean refreshed;
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        refreshed = CommitGraphMaintenance.refresh(context, log);
+      }
+
+      // then
+      assertThat(written).isTrue();
+      assertThat(writtenAgain).isFalse();
+      assertThat(refreshed).isTrue();
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        assertThat(context.getCommitGraph().getCommitCount()).isEqualTo(3);
+        assertThat(context.getCommitGraph().findGraphPosition(third)).isNotNegative();
+      }
+    }
+  }
+
+  @Test
+  public void refresh_shouldSkipWhenTheCommitGraphIsLocked() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      git.commit().setMessage("first").setAllowEmpty(true).call();
+      Path objects = git.getRepository().getDirectory().toPath().resolve("objects");
+      Files.createDirectories(objects.resolve("info"));
+      Files.createFile(objects.resolve("info/commit-graph.lock"));
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        boolean written = CommitGraphMaintenance.refresh(context, log);
+
+        // then
+        assertThat(written).isFalse();
+        assertThat(objects.resolve("info/commit-graph")).doesNotExist();
+        assertThat(objects.resolve("info/commit-graph.lock")).exists();
+      }
+    }
+  }
+}
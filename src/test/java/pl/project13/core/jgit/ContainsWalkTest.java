@@ -0,0 +1,86 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.project13.core.log.LogInterface;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ContainsWalkTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void isContainedIn_shouldFindTheCommitsThatReachTheGivenOne() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      RevCommit base = git.commit().setMessage("base").setAllowEmpty(true).call();
+      git.branchCreate().setName("feature").call();
+      RevCommit main = git.commit().setMessage("main").setAllowEmpty(true).call();
+      git.checkout().setName("feature").call();
+      RevCommit feature = git.commit().setMessage("feature").setAllowEmpty(true).call();
+      git.checkout().setName("master").call();
+      git.merge().include(feature).setMessage("merge").call();
+      RevCommit merge = git.getRepository().parseCommit(git.getRepository().resolve("HEAD"));
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        try (ContainsWalk containsWalk = new ContainsWalk(context, feature)) {
+          // then
+          assertThat(containsWalk.isContainedIn(merge)).isTrue();
+          assertThat(containsWalk.isContainedIn(feature)).isTrue();
+          assertThat(containsWalk.isContainedIn(main)).isFalse();
+          assertThat(containsWalk.isContainedIn(base)).isFalse();
+        }
+        // the commits marked by the first walk are searched again
+        try (ContainsWalk containsWalk = new ContainsWalk(context, base)) {
+          assertThat(containsWalk.isContainedIn(main)).isTrue();
+          assertThat(containsWalk.isContainedIn(merge)).isTrue();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void getTags_shouldListTheTagsContainingTheCommit() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      RevCommit first = git.commit().setMessage("first").setAllowEmpty(true).call();
+      git.tag().setName("v1.0").setMessage("v1.0").call();
+      RevCommit second = git.commit().setMessage("second").setAllowEmpty(true).call();
+      git.tag().setName("lightweight").setAnnotated(false).call();
+      git.tag().setName("v2.0").setMessage("v2.0").call();
+      JGitCommon jGitCommon = new JGitCommon(mock(LogInterface.class));
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        // then
+        assertThat(jGitCommon.getTags(context, first)).containsExactly("lightweight", "v1.0", "v2.0");
+        assertThat(jGitCommon.getTags(context, second)).containsExactly("lightweight", "v2.0");
+      }
+    }
+  }
+}
@@ -52,6 +52,28 @@ public class DescribeCommandOptionsTest {
     });
   }
 
+  @Test
+  public void candidates_shouldFailOnNegativeNumbers() throws Exception {
+    // given
+    final Repository repo = mock(Repository.class);
+    final LogInterface logInterface = mock(LogInterface.class);
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      DescribeCommand.on(evaluateOnCommit, repo, logInterface).candidates(-1);
+    });
+  }
+
+  @Test
+  public void candidates_shouldFailAboveTheMaximum() throws Exception {
+    // given
+    final Repository repo = mock(Repository.class);
+    final LogInterface logInterface = mock(LogInterface.class);
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> {
+      DescribeCommand.on(evaluateOnCommit, repo, logInterface).candidates(GitDescribeConfig.MAX_CANDIDATES + 1);
+    });
+  }
+
   @Test
   public void apply_shouldDelegateToAllOptions() throws Exception {
     // given
@@ -60,6 +82,8 @@ public class DescribeCommandOptionsTest {
     final int abbrev = 12;
 
     GitDescribeConfig config = new GitDescribeConfig(true, devel, match, abbrev, true, true);
+    config.setCandidates(5);
+    config.setMaxSearchDepth(1000);
 
     Repository repo = mock(Repository.class);
     final LogInterface logInterface = mock(LogInterface.class);
@@ -75,5 +99,7 @@ public class DescribeCommandOptionsTest {
     verify(spiedCommand).dirty(eq(devel));
     verify(spiedCommand).tags(eq(true));
     verify(spiedCommand).forceLongFormat(eq(true));
+    verify(spiedCommand).candidates(eq(5));
+    verify(spiedCommand).maxSearchDepth(eq(1000));
   }
 }
\ No newline at end of file
@@ -0,0 +1,293 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.project13.core.git.GitDescribeConfig;
+import pl.project13.core.log.LogInterface;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class DescribeWalkTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void findClosestTag_shouldFindTagAndDistanceInOneWalk() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      RevCommit base = commit(git, "base", 1);
+      git.tag().setName("v1.0").setMessage("v1.0").setTagger(ident(1)).call();
+      git.branchCreate().setName("feature").call();
+      commit(git, "main-1", 2);
+      git.checkout().setName("feature").call();
+      RevCommit feature = commit(git, "feature-1", 3);
+      git.tag().setName("feature-1").setMessage("feature-1").setTagger(ident(3)).call();
+      commit(git, "feature-2", 4);
+      git.checkout().setName("master").call();
+      git.merge().include(git.getRepository().resolve("feature")).setMessage("merge")
+          .setCommit(false).call();
+      commit(git, "merge", 5);
+      RevCommit head = commit(git, "main-2", 6);
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        TagIndex tagIndex = TagIndex.of(context.getRefSnapshot().getTags(), false, Pattern.compile(".*"), log);
+
+        // when
+        DescribeWalk.ClosestTag closestTag = new DescribeWalk(context, tagIndex, log).findClosestTag(head);
+        DescribeWalk.ClosestTag firstParentTag = new DescribeWalk(context, tagIndex, log).firstParent(true).findClosestTag(head);
+        DescribeWalk.ClosestTag onTag = new DescribeWalk(context, tagIndex, log).findClosestTag(base);
+
+        // then
+        // main-2, merge, main-1 and feature-2 are not reachable from feature-1, v1.0 misses feature-1 as well
+        assertThat(closestTag).isNotNull();
+        assertThat(closestTag.getName()).isEqualTo("feature-1");
+        assertThat(closestTag.getCommit()).isEqualTo(feature);
+        assertThat(closestTag.getDistance()).isEqualTo(4);
+
+        assertThat(firstParentTag).isNotNull();
+        assertThat(firstParentTag.getName()).isEqualTo("v1.0");
+        assertThat(firstParentTag.getDistance()).isEqualTo(3);
+
+        assertThat(onTag).isNotNull();
+        assertThat(onTag.getName()).isEqualTo("v1.0");
+        assertThat(onTag.getDistance()).isEqualTo(0);
+      }
+    }
+  }
+
+  @Test
+  public void findClosestTag_shouldNotWalkTheHistoryBelowTheClosestTag() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      for (int i = 1; i <= 20; i++) {
+        commit(git, "old-" + i, i);
+      }
+      git.tag().setName("lightweight").setAnnotated(false).call();
+      commit(git, "new-1", 21);
+      RevCommit head = commit(git, "new-2", 22);
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        TagIndex tagIndex = TagIndex.of(context.getRefSnapshot().getTags(), true, Pattern.compile(".*"), log);
+
+        // when
+        DescribeWalk describeWalk = new DescribeWalk(context, tagIndex, log);
+        DescribeWalk.ClosestTag closestTag = describeWalk.findClosestTag(head);
+
+        // then
+        assertThat(closestTag).isNotNull();
+        assertThat(closestTag.getName()).isEqualTo("lightweight");
+        assertThat(closestTag.getDistance()).isEqualTo(2);
+        // the 19 commits below the tagged one are never visited
+        assertThat(describeWalk.getVisitedCommits()).isLessThan(20);
+      }
+    }
+  }
+
+  @Test
+  public void findClosestTag_shouldGiveUpOnTheBoundsOfTheSearch() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      commit(git, "tagged", 1);
+      git.tag().setName("v1.0").setMessage("v1.0").setTagger(ident(1)).call();
+      RevCommit head = null;
+      for (int i = 2; i <= 10; i++) {
+        head = commit(git, "untagged-" + i, i);
+      }
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        TagIndex tagIndex = TagIndex.of(context.getRefSnapshot().getTags(), false, Pattern.compile(".*"), log);
+
+        // when
+        DescribeWalk.ClosestTag unbounded = new DescribeWalk(context, tagIndex, log).maxSearchDepth(0).findClosestTag(head);
+        DescribeWalk.ClosestTag deepEnough = new DescribeWalk(context, tagIndex, log).maxSearchDepth(10).findClosestTag(head);
+        DescribeWalk.ClosestTag tooShallow = new DescribeWalk(context, tagIndex, log).maxSearchDepth(9).findClosestTag(head);
+        DescribeWalk.ClosestTag exactOnly = new DescribeWalk(context, tagIndex, log).maxCandidates(0).findClosestTag(head);
+
+        // then
+        assertThat(unbounded).isNotNull();
+        assertThat(unbounded.getDistance()).isEqualTo(9);
+        assertThat(deepEnough).isNotNull();
+        assertThat(deepEnough.getName()).isEqualTo("v1.0");
+        assertThat(tooShallow).isNull();
+        assertThat(exactOnly).isNull();
+      }
+    }
+  }
+
+  @Test
+  public void findClosestTag_shouldSearchOncePerRun() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      commit(git, "tagged", 1);
+      git.tag().setName("v1.0").setMessage("v1.0").setTagger(ident(1)).call();
+      RevCommit head = commit(git, "untagged", 2);
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        TagIndex tagIndex = context.getTagIndex(false, ".*", log);
+        DescribeWalk.ClosestTag forDescribe = new DescribeWalk(context, tagIndex, log).findClosestTag(head);
+        DescribeWalk.ClosestTag forClosestTagName = new DescribeWalk(context, context.getTagIndex(false, ".*", log), log).findClosestTag(head);
+        DescribeWalk.ClosestTag withOtherOptions = new DescribeWalk(context, tagIndex, log).firstParent(true).findClosestTag(head);
+
+        // then
+        assertThat(context.getTagIndex(false, ".*", log)).isSameAs(tagIndex);
+        assertThat(context.getTagIndex(true, ".*", log)).isNotSameAs(tagIndex);
+        assertThat(forClosestTagName).isSameAs(forDescribe);
+        assertThat(withOtherOptions).isNotSameAs(forDescribe);
+        assertThat(withOtherOptions.getName()).isEqualTo(forDescribe.getName());
+      }
+    }
+  }
+
+  @Test
+  public void findClosestTag_shouldReturnNullWithoutReachableTags() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      RevCommit head = commit(git, "first", 1);
+      git.tag().setName("lightweight").setAnnotated(false).call();
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        TagIndex tagIndex = TagIndex.of(context.getRefSnapshot().getTags(), false, Pattern.compile(".*"), log);
+
+        // when
+        DescribeWalk.ClosestTag closestTag = new DescribeWalk(context, tagIndex, log).findClosestTag(head);
+
+        // then
+        assertThat(closestTag).isNull();
+      }
+    }
+  }
+
+  @Test
+  public void findClosestTag_shouldStopOnceNoTagCanBeReached() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      RevCommit head = null;
+      for (int i = 1; i <= 20; i++) {
+        head = commit(git, "old-" + i, i);
+      }
+      git.checkout().setCreateBranch(true).setName("release").call();
+      commit(git, "release", 100);
+      git.tag().setName("v1.0").setMessage("v1.0").setTagger(ident(100)).call();
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        context.setClockSkewSlop(0);
+        TagIndex tagIndex = context.getTagIndex(false, ".*", log);
+
+        // when
+        DescribeWalk describeWalk = new DescribeWalk(context, tagIndex, log);
+        DescribeWalk.ClosestTag closestTag = describeWalk.findClosestTag(head);
+
+        // then
+        assertThat(closestTag).isNull();
+        // all 20 commits would be visited without the cutoff
+        assertThat(describeWalk.getVisitedCommits()).isLessThan(20);
+      }
+    }
+  }
+
+  @Test
+  public void findClosestTag_shouldNotTrustTheCommitTimesByDefault() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      commit(git, "tagged", 100);
+      git.tag().setName("v1.0").setMessage("v1.0").setTagger(ident(100)).call();
+      // committed with a clock running far behind
+      commit(git, "skewed", 10);
+      for (int i = 1; i <= 5; i++) {
+        commit(git, "new-" + i, 10 + i);
+      }
+      RevCommit head = commit(git, "head", 20);
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        TagIndex tagIndex = context.getTagIndex(false, ".*", log);
+
+        // when
+        DescribeWalk.ClosestTag closestTag = new DescribeWalk(context, tagIndex, log).findClosestTag(head);
+
+        // then
+        assertThat(closestTag).isNotNull();
+        assertThat(closestTag.getName()).isEqualTo("v1.0");
+        assertThat(closestTag.getDistance()).isEqualTo(7);
+      }
+    }
+  }
+
+  @Test
+  public void findClosestTag_shouldSupportTheMaximumNumberOfCandidates() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      commit(git, "base", 1);
+      int branches = GitDescribeConfig.MAX_CANDIDATES + 1;
+      for (int i = 1; i <= branches; i++) {
+        git.checkout().setCreateBranch(true).setName("branch-" + i).setStartPoint("master").call();
+        commit(git, "branch-" + i, 1 + i);
+        git.tag().setName("tag-" + i).setAnnotated(false).call();
+        git.checkout().setName("master").call();
+      }
+      // all tags are queued (behind the newer merges) before the first one is visited
+      RevCommit head = null;
+      for (int i = 1; i <= branches; i++) {
+        git.merge().include(git.getRepository().resolve("branch-" + i)).setMessage("merge")
+            .setFastForward(MergeCommand.FastForwardMode.NO_FF).setCommit(false).call();
+        head = commit(git, "merge-" + i, 100 + i);
+      }
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        TagIndex tagIndex = TagIndex.of(context.getRefSnapshot().getTags(), true, Pattern.compile(".*"), log);
+
+        // when
+        DescribeWalk.ClosestTag closestTag = new DescribeWalk(context, tagIndex, log)
+            .maxCandidates(GitDescribeConfig.MAX_CANDIDATES)
+            .findClosestTag(head);
+
+        // then
+        assertThat(closestTag).isNotNull();
+        assertThat(closestTag.getName()).startsWith("tag-");
+      }
+    }
+  }
+
+  private static RevCommit commit(Git git, String message, long minutes) throws Exception {
+    return git.commit().setMessage(message).setAllowEmpty(true).setCommitter(ident(minutes)).call();
+  }
+
+  private static PersonIdent ident(long minutes) {
+    return new PersonIdent("committer", "committer@example.com", new Date(minutes * 60_000L), TimeZone.getTimeZone("UTC"));
+  }
+}
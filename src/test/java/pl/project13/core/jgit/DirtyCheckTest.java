@@ -0,0 +1,244 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirtyCheckTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void isDirty_shouldOnlyMindTrackedFiles() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      Repository repository = git.getRepository();
+      DirtyCheck dirtyCheck = new DirtyCheck(repository);
+      // no commit yet, nothing tracked
+      write("untracked/file.txt", "untracked");
+      assertThat(dirtyCheck.isDirty(null)).isFalse();
+      write("module/file.txt", "module");
+      write("README", "readme");
+      git.add().addFilepattern("module").addFilepattern("README").call();
+      // added to the index
+      assertThat(dirtyCheck.isDirty(null)).isTrue();
+      git.commit().setMessage("initial").call();
+
+      // when / then
+      assertThat(dirtyCheck.isDirty(null)).isFalse();
+
+      write("README", "changed");
+      assertThat(dirtyCheck.isDirty(null)).isTrue();
+      assertThat(dirtyCheck.isDirty("module")).isFalse();
+      git.add().addFilepattern("README").call();
+      // changed in the index
+      assertThat(dirtyCheck.isDirty(null)).isTrue();
+      git.commit().setMessage("changed").call();
+      assertThat(dirtyCheck.isDirty(null)).isFalse();
+
+      Files.delete(folder.resolve("module/file.txt"));
+      assertThat(dirtyCheck.isDirty(null)).isTrue();
+      assertThat(dirtyCheck.isDirty("module")).isTrue();
+      git.rm().addFilepattern("module/file.txt").call();
+      // removed from the index
+      assertThat(dirtyCheck.isDirty(null)).isTrue();
+    }
+  }
+
+  @Test
+  public void isDirty_shouldMindConflicts() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      write("README", "base");
+      git.add().addFilepattern("README").call();
+      git.commit().setMessage("base").call();
+      git.checkout().setCreateBranch(true).setName("feature").call();
+      write("README", "feature");
+      git.commit().setAll(true).setMessage("feature").call();
+      git.checkout().setName("master").call();
+      write("README", "master");
+      git.commit().setAll(true).setMessage("master").call();
+
+      // when
+      MergeResult merge = git.merge().include(git.getRepository().resolve("feature")).call();
+      // resolve the content, but leave the conflict in the index
+      write("README", "master");
+
+      // then
+      assertThat(merge.getMergeStatus()).isEqualTo(MergeResult.MergeStatus.CONFLICTING);
+      assertThat(new DirtyCheck(git.getRepository()).isDirty(null)).isTrue();
+    }
+  }
+
+  @Test
+  public void isDirty_shouldCheckTheSubmodulesUnlessToldNotTo() throws Exception {
+    File library = folder.resolve("library").toFile();
+    try (Git libraryGit = Git.init().setDirectory(library).setInitialBranch("master").call()) {
+      Files.write(library.toPath().resolve("lib.txt"), "lib".getBytes(StandardCharsets.UTF_8));
+      libraryGit.add().addFilepattern("lib.txt").call();
+      libraryGit.commit().setMessage("lib").call();
+    }
+    File project = folder.resolve("project").toFile();
+    try (Git git = Git.init().setDirectory(project).setInitialBranch("master").call()) {
+      // given
+      git.submoduleAdd().setPath("lib").setURI(library.toURI().toString()).call().close();
+      git.commit().setMessage("add submodule").call();
+      assertThat(new DirtyCheck(git.getRepository()).isDirty(null)).isFalse();
+
+      // when
+      Files.write(project.toPath().resolve("lib/lib.txt"), "changed".getBytes(StandardCharsets.UTF_8));
+
+      // then
+      assertThat(new DirtyCheck(git.getRepository()).isDirty(null)).isTrue();
+      assertThat(new DirtyCheck(git.getRepository(), new DirtyCheck.Options().checkSubmodules(false)).isDirty(null)).isFalse();
+    }
+  }
+
+  @Test
+  public void isDirty_shouldScanTheWorkTreeOnSeveralThreads() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      for (int i = 0; i < 200; i++) {
+        write("module-" + (i % 5) + "/file-" + i + ".txt", "content-" + i);
+      }
+      write("untracked/file.txt", "untracked");
+      git.add().addFilepattern("module-0").addFilepattern("module-1").addFilepattern("module-2")
+          .addFilepattern("module-3").addFilepattern("module-4").call();
+      git.commit().setMessage("initial").call();
+      DirtyCheck dirtyCheck = new DirtyCheck(git.getRepository(), new DirtyCheck.Options().threads(4).minParallelEntries(1));
+
+      // when / then
+      assertThat(dirtyCheck.isDirty(null)).isFalse();
+      assertThat(dirtyCheck.isDirty("module-3")).isFalse();
+
+      write("module-3/file-198.txt", "changed");
+      assertThat(dirtyCheck.isDirty(null)).isTrue();
+      assertThat(dirtyCheck.isDirty("module-3")).isTrue();
+      assertThat(dirtyCheck.isDirty("module-4/")).isFalse();
+      write("module-3/file-198.txt", "content-198");
+
+      Files.delete(folder.resolve("module-1/file-6.txt"));
+      assertThat(dirtyCheck.isDirty(null)).isTrue();
+      assertThat(dirtyCheck.isDirty("module-1")).isTrue();
+      assertThat(dirtyCheck.isDirty("module-2")).isFalse();
+      write("module-1/file-6.txt", "content-6");
+
+      write("module-2/file-new.txt", "new");
+      git.add().addFilepattern("module-2/file-new.txt").call();
+      // added to the index only
+      assertThat(dirtyCheck.isDirty(null)).isTrue();
+      assertThat(dirtyCheck.isDirty("module-0")).isFalse();
+    }
+  }
+
+  @Test
+  public void isDirty_shouldOnlyCompareTheFileAttributesWhenTrustingThem() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      write("README", "readme");
+      write("module/file.txt", "module");
+      git.add().addFilepattern("README").addFilepattern("module").call();
+      git.commit().setMessage("initial").call();
+      Repository repository = git.getRepository();
+      DirtyCheck trustingCheck = new DirtyCheck(repository, new DirtyCheck.Options().trustFileStat(true));
+      assertThat(trustingCheck.isDirty(null)).isFalse();
+
+      // when
+      Path readme = folder.resolve("README");
+      Files.setLastModifiedTime(readme, FileTime.fromMillis(Files.getLastModifiedTime(readme).toMillis() - 10_000));
+
+      // then
+      // touched, but not changed
+      assertThat(trustingCheck.isDirty(null)).isTrue();
+      assertThat(trustingCheck.isDirty("module")).isFalse();
+      assertThat(new DirtyCheck(repository).isDirty(null)).isFalse();
+
+      write("module/file.txt", "changed module");
+      assertThat(trustingCheck.isDirty("module")).isTrue();
+      assertThat(new DirtyCheck(repository, new DirtyCheck.Options().threads(4).trustFileStat(true).minParallelEntries(1)).isDirty("module")).isTrue();
+    }
+  }
+
+  @Test
+  public void findDirtyPaths_shouldFindWhatIsDirtyFindsPerPath() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      List<String> paths = List.of(".", "a", "b/", "c", "c/d", "e");
+      write("README", "readme");
+      write("a/1.txt", "a");
+      write("b/1.txt", "b");
+      write("c/1.txt", "c");
+      write("c/d/1.txt", "d");
+      git.add().addFilepattern(".").call();
+      git.commit().setMessage("initial").call();
+      Repository repository = git.getRepository();
+
+      for (int change = 0; change < 4; change++) {
+        // when
+        switch (change) {
+          case 1:
+            write("c/d/1.txt", "changed");
+            break;
+          case 2:
+            write("b/untracked.txt", "untracked");
+            Files.delete(folder.resolve("a/1.txt"));
+            break;
+          case 3:
+            write("c/d/1.txt", "d");
+            write("README", "changed");
+            break;
+          default:
+            break;
+        }
+
+        // then
+        for (DirtyCheck dirtyCheck : List.of(new DirtyCheck(repository), new DirtyCheck(repository, new DirtyCheck.Options().threads(4).minParallelEntries(1)))) {
+          Set<String> expected = new HashSet<>();
+          for (String path : paths) {
+            if (dirtyCheck.isDirty(path)) {
+              expected.add(path);
+            }
+          }
+          assertThat(dirtyCheck.findDirtyPaths(paths)).as("change %d", change).isEqualTo(expected);
+        }
+      }
+      assertThat(new DirtyCheck(repository).findDirtyPaths(paths)).containsExactly(".", "a");
+    }
+  }
+
+  private void write(String path, String content) throws Exception {
+    Path file = folder.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
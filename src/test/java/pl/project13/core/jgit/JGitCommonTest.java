@@ -17,13 +17,32 @@
 
 package pl.project13.core.jgit;
 
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import pl.project13.core.log.LogInterface;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 
 public class JGitCommonTest {
+  @TempDir
+  public Path folder;
+
+  @AfterEach
+  public void tearDown() {
+    JGitRepositoryCache.clear();
+  }
 
   @Test
   public void trimFullTagName_shouldTrimFullTagNamePrefix() throws Exception {
@@ -37,4 +56,84 @@ public class JGitCommonTest {
     // then
     assertThat(simpleName).isEqualTo("v1.0.0");
   }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void findTagObjectIds_shouldStillMapTheCommitsToTheirTags() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      RevCommit tagged = commitFile(git, "README", "one");
+      git.tag().setName("v1.0.0").setAnnotated(false).call();
+      git.tag().setName("v1.0.1").setMessage("release").call();
+      commitFile(git, "README", "two");
+
+      // when
+      Map<ObjectId, List<String>> tags = new JGitCommon(mock(LogInterface.class))
+          .findTagObjectIds(git.getRepository(), true, ".*");
+
+      // then
+      assertThat(tags).containsOnly(Map.entry(tagged.getId(), List.of("v1.0.1", "v1.0.0")));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void distanceBetween_shouldCountTheCommitsOnlyReachableFromTheChild() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      RevCommit root = commitFile(git, "README", "root");
+      RevCommit tagged = commitFile(git, "README", "tagged");
+      commitFile(git, "README", "after tag");
+      git.checkout().setCreateBranch(true).setName("side").setStartPoint(root).call();
+      commitFile(git, "side.txt", "side");
+      git.checkout().setName("master").call();
+      RevCommit merge = git.getRepository().parseCommit(
+          git.merge().include(git.getRepository().resolve("side")).setMessage("merge").call().getNewHead());
+
+      // when
+      int distance = new JGitCommon(mock(LogInterface.class)).distanceBetween(git.getRepository(), merge, tagged);
+
+      // then
+      // the merge, the commit after the tag and the commit on the side branch
+      assertThat(distance).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void findLatestCommitsForPaths_shouldShareTheCommitsWithTheOtherRuns() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      RevCommit one = commitFile(git, "one/pom.xml", "one");
+      RevCommit two = commitFile(git, "two/pom.xml", "two");
+      RevCommit head = commitFile(git, "README", "readme");
+      JGitCommon jGitCommon = new JGitCommon(mock(LogInterface.class));
+      Repository repository = JGitRepositoryCache.acquire(git.getRepository().getDirectory());
+
+      // when
+      Map<String, RevCommit> firstModule;
+      Map<String, RevCommit> secondModule;
+      try {
+        try (RevWalkContext context = new RevWalkContext(repository)) {
+          firstModule = jGitCommon.findLatestCommitsForPaths(context, head, List.of("one", "two"), false);
+        }
+        try (RevWalkContext context = new RevWalkContext(repository)) {
+          secondModule = jGitCommon.findLatestCommitsForPaths(context, head, List.of("one", "two", "three"), false);
+        }
+      } finally {
+        JGitRepositoryCache.release(repository);
+      }
+
+      // then
+      assertThat(firstModule).containsOnly(Map.entry("one", one), Map.entry("two", two));
+      assertThat(secondModule).containsOnly(Map.entry("one", one), Map.entry("two", two));
+    }
+  }
+
+  private static RevCommit commitFile(Git git, String path, String content) throws Exception {
+    Path file = git.getRepository().getWorkTree().toPath().resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    git.add().addFilepattern(path).call();
+    return git.commit().setMessage(path).call();
+  }
 }
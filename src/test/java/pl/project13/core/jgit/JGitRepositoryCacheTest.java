@@ -0,0 +1,187 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitRepositoryCacheTest {
+  @TempDir
+  public Path folder;
+
+  @AfterEach
+  public void tearDown() {
+    JGitRepositoryCache.clock = System::currentTimeMillis;
+    JGitRepositoryCache.clear();
+  }
+
+  @Test
+  public void acquire_shouldShareRepositoryBetweenCallers() throws Exception {
+    // given
+    File dotGitDirectory = initRepository(folder.toFile());
+
+    // when
+    Repository first = JGitRepositoryCache.acquire(dotGitDirectory);
+    JGitRepositoryCache.release(first);
+    Repository second = JGitRepositoryCache.acquire(dotGitDirectory);
+    JGitRepositoryCache.release(second);
+
+    // then
+    assertThat(second).isSameAs(first);
+  }
+
+  @Test
+  public void acquire_shouldShareRepositoryForNonCanonicalGitDirPath() throws Exception {
+    // given
+    File dotGitDirectory = initRepository(folder.toFile());
+
+    // when
+    Repository viaGitDir = JGitRepositoryCache.acquire(dotGitDirectory);
+    Repository viaCanonicalPath = JGitRepositoryCache.acquire(new File(folder.toFile(), "./.git"));
+
+    // then
+    assertThat(viaCanonicalPath).isSameAs(viaGitDir);
+    JGitRepositoryCache.release(viaGitDir);
+    JGitRepositoryCache.release(viaCanonicalPath);
+  }
+
+  @Test
+  public void acquire_shouldKeepRepositoryWhenItIsWrittenTo() throws Exception {
+    // given
+    File dotGitDirectory = initRepository(folder.toFile());
+    Repository first = JGitRepositoryCache.acquire(dotGitDirectory);
+    JGitRepositoryCache.release(first);
+
+    // when
+    try (Git git = Git.open(folder.toFile())) {
+      git.commit().setMessage("commit").setAllowEmpty(true).call();
+      git.tag().setName("v1.0").call();
+    }
+    Files.write(dotGitDirectory.toPath().resolve("git-commit-id-history.properties"), new byte[0]);
+    Repository second = JGitRepositoryCache.acquire(dotGitDirectory);
+    JGitRepositoryCache.release(second);
+
+    // then
+    assertThat(second).isSameAs(first);
+  }
+
+  @Test
+  public void getShared_shouldKeepTheValuesWithTheEntryOfTheRepository() throws Exception {
+    // given
+    File dotGitDirectory = initRepository(folder.toFile());
+    Repository repository = JGitRepositoryCache.acquire(dotGitDirectory);
+    Object shared = JGitRepositoryCache.getShared(repository, "key", Object::new);
+
+    // when
+    Object again = JGitRepositoryCache.getShared(repository, "key", Object::new);
+    JGitRepositoryCache.release(repository);
+    JGitRepositoryCache.clear();
+    Repository reopened = JGitRepositoryCache.acquire(dotGitDirectory);
+    Object afterReopen = JGitRepositoryCache.getShared(reopened, "key", Object::new);
+    JGitRepositoryCache.release(reopened);
+
+    // then
+    assertThat(again).isSameAs(shared);
+    assertThat(afterReopen).isNotSameAs(shared);
+  }
+
+  @Test
+  public void getShared_shouldNotHoldTheCacheWhileCreatingTheValue() throws Exception {
+    // given
+    Repository repository = JGitRepositoryCache.acquire(initRepository(folder.resolve("shared").toFile()));
+    File otherDotGitDirectory = initRepository(folder.resolve("other").toFile());
+    CountDownLatch creating = new CountDownLatch(1);
+    CountDownLatch otherAcquired = new CountDownLatch(1);
+    CompletableFuture<Object> shared = CompletableFuture.supplyAsync(() -> JGitRepositoryCache.getShared(repository, "key", () -> {
+      creating.countDown();
+      try {
+        return otherAcquired.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }));
+    assertThat(creating.await(10, TimeUnit.SECONDS)).isTrue();
+
+    // when
+    Repository other = JGitRepositoryCache.acquire(otherDotGitDirectory);
+    JGitRepositoryCache.release(other);
+    otherAcquired.countDown();
+
+    // then
+    assertThat(shared.get(10, TimeUnit.SECONDS)).isEqualTo(true);
+    assertThat(JGitRepositoryCache.getShared(repository, "key", () -> false)).isEqualTo(true);
+    JGitRepositoryCache.release(repository);
+  }
+
+  @Test
+  public void release_shouldCloseIdleRepositories() throws Exception {
+    // given
+    File idleDotGitDirectory = initRepository(folder.resolve("idle").toFile());
+    File usedDotGitDirectory = initRepository(folder.resolve("used").toFile());
+    Repository idle = JGitRepositoryCache.acquire(idleDotGitDirectory);
+    JGitRepositoryCache.release(idle);
+    Repository used = JGitRepositoryCache.acquire(usedDotGitDirectory);
+
+    // when
+    long now = System.currentTimeMillis();
+    JGitRepositoryCache.clock = () -> now + JGitRepositoryCache.IDLE_EXPIRY_MS + 1;
+    JGitRepositoryCache.release(used);
+
+    // then
+    assertThat(JGitRepositoryCache.acquire(idleDotGitDirectory)).isNotSameAs(idle);
+    assertThat(JGitRepositoryCache.acquire(usedDotGitDirectory)).isSameAs(used);
+  }
+
+  @Test
+  public void acquire_shouldNotServeRepositoryThatWasReplaced() throws Exception {
+    // given
+    File dotGitDirectory = initRepository(folder.resolve("repository").toFile());
+    Repository first = JGitRepositoryCache.acquire(dotGitDirectory);
+    JGitRepositoryCache.release(first);
+
+    // when
+    File replacement = initRepository(folder.resolve("replacement").toFile());
+    FileUtils.forceDelete(dotGitDirectory);
+    FileUtils.moveDirectory(replacement, dotGitDirectory);
+    Repository second = JGitRepositoryCache.acquire(dotGitDirectory);
+    JGitRepositoryCache.release(second);
+
+    // then
+    assertThat(second).isNotSameAs(first);
+  }
+
+  private static File initRepository(File workTree) throws Exception {
+    try (Git git = Git.init().setDirectory(workTree).call()) {
+      return git.getRepository().getDirectory();
+    }
+  }
+}
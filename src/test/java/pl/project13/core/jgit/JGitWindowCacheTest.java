@@ -0,0 +1,49 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.junit.jupiter.api.Test;
+import pl.project13.core.git.JGitCacheConfig;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JGitWindowCacheTest {
+
+  @Test
+  public void shouldReleaseAfterRun_shouldFollowConfiguredCleanUpMode() {
+    // given
+    JGitCacheConfig always = new JGitCacheConfig();
+    always.setCleanUp(JGitCacheConfig.CleanUpMode.ALWAYS);
+    JGitCacheConfig never = new JGitCacheConfig();
+    never.setCleanUp(JGitCacheConfig.CleanUpMode.NEVER);
+
+    // then
+    assertThat(JGitWindowCache.shouldReleaseAfterRun(always)).isTrue();
+    assertThat(JGitWindowCache.shouldReleaseAfterRun(never)).isFalse();
+  }
+
+  @Test
+  public void shouldReleaseAfterRun_shouldOnlyReleaseOnWindowsByDefault() {
+    // given
+    boolean isWindows = System.getProperty("os.name").toLowerCase().startsWith("windows");
+
+    // then
+    assertThat(JGitWindowCache.shouldReleaseAfterRun(null)).isEqualTo(isWindows);
+    assertThat(JGitWindowCache.shouldReleaseAfterRun(new JGitCacheConfig())).isEqualTo(isWindows);
+  }
+}
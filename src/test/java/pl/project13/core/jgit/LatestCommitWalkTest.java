@@ -0,0 +1,154 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.project13.core.log.LogInterface;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class LatestCommitWalkTest {
+  private static final List<String> FILES = List.of("a/1.txt", "a/2.txt", "b/1.txt", "c/1.txt", "c/d/1.txt", "root.txt");
+  private static final List<String> PATHS = List.of("a", "b", "c", "c/d", "c/d/1.txt", "e", "root.txt");
+
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void findLatestCommits_shouldFindWhatThePathWalksFind() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      Repository repository = git.getRepository();
+      Random random = new Random(7);
+      List<ObjectId> commits = new ArrayList<>();
+      List<Map<String, String>> contents = new ArrayList<>();
+      addCommits(repository, commits, contents, random, 150);
+      repository.getConfig().setBoolean("commitGraph", null, "changedPaths", true);
+      try (RevWalkContext context = new RevWalkContext(repository)) {
+        CommitGraphMaintenance.refresh(context, mock(LogInterface.class));
+      }
+      // commits made since the commit-graph was written
+      addCommits(repository, commits, contents, random, 50);
+
+      for (boolean withCommitGraph : new boolean[] {false, true}) {
+        repository.getConfig().setBoolean("core", null, "commitGraph", withCommitGraph);
+        try (RevWalkContext context = new RevWalkContext(repository)) {
+          for (boolean firstParent : new boolean[] {false, true}) {
+            for (int i = 0; i < commits.size(); i += 3) {
+              // when
+              Map<String, RevCommit> latestCommits = new LatestCommitWalk(context, firstParent)
+                  .findLatestCommits(commits.get(i), PATHS);
+
+              // then
+              for (String path : PATHS) {
+                try (RevWalk pathWalk = context.pathWalk(path, firstParent)) {
+                  pathWalk.markStart(pathWalk.parseCommit(commits.get(i)));
+                  RevCommit expected = pathWalk.next();
+                  assertThat(latestCommits.get(path))
+                      .as("%s from commit %d, first parent %s", path, i, firstParent)
+                      .isEqualTo(expected);
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds commits changing random files on top of random earlier commits. A fifth of them merge another
+   * commit, taking over the content of some files from the merged commit.
+   */
+  private static void addCommits(Repository repository, List<ObjectId> commits, List<Map<String, String>> contents,
+      Random random, int count) throws Exception {
+    try (ObjectInserter inserter = repository.newObjectInserter()) {
+      for (int i = 0; i < count; i++) {
+        List<ObjectId> parentIds = new ArrayList<>();
+        Map<String, String> content = new TreeMap<>();
+        if (!commits.isEmpty()) {
+          int parent = commits.size() - 1 - random.nextInt(Math.min(commits.size(), 8));
+          parentIds.add(commits.get(parent));
+          content.putAll(contents.get(parent));
+          if (random.nextInt(5) == 0) {
+            int merged = random.nextInt(commits.size());
+            if (merged != parent) {
+              parentIds.add(commits.get(merged));
+              for (String file : FILES) {
+                if (random.nextBoolean() && contents.get(merged).containsKey(file)) {
+                  content.put(file, contents.get(merged).get(file));
+                }
+              }
+            }
+          }
+        }
+        if (parentIds.size() < 2 || random.nextBoolean()) {
+          content.put(FILES.get(random.nextInt(FILES.size())), "content-" + commits.size());
+        }
+
+        DirCache index = DirCache.newInCore();
+        DirCacheBuilder builder = index.builder();
+        for (Map.Entry<String, String> file : content.entrySet()) {
+          DirCacheEntry entry = new DirCacheEntry(file.getKey());
+          entry.setFileMode(FileMode.REGULAR_FILE);
+          entry.setObjectId(inserter.insert(Constants.OBJ_BLOB, file.getValue().getBytes(StandardCharsets.UTF_8)));
+          builder.add(entry);
+        }
+        builder.finish();
+
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(index.writeTree(inserter));
+        PersonIdent ident = new PersonIdent("Author", "author@example.com", 1_000_000_000_000L + commits.size() * 1000L, 0);
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage("commit-" + commits.size());
+        commit.setParentIds(parentIds);
+        commits.add(inserter.insert(commit));
+        contents.add(content);
+      }
+      inserter.flush();
+    }
+    RefUpdate update = repository.updateRef("refs/heads/tip-" + commits.size());
+    update.setNewObjectId(commits.get(commits.size() - 1));
+    update.forceUpdate();
+  }
+}
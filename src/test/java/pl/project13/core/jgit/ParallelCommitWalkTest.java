@@ -0,0 +1,113 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.RevWalkUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.project13.core.log.LogInterface;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ParallelCommitWalkTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void countCommits_shouldCountLikeAWalk() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      Repository repository = git.getRepository();
+      Random random = new Random(42);
+      List<ObjectId> commits = new ArrayList<>();
+      addCommits(repository, commits, random, 300);
+      try (RevWalkContext context = new RevWalkContext(repository)) {
+        CommitGraphMaintenance.refresh(context, mock(LogInterface.class));
+      }
+      // commits made since the commit-graph was written
+      addCommits(repository, commits, random, 100);
+
+      for (boolean withCommitGraph : new boolean[] {false, true}) {
+        repository.getConfig().setBoolean("core", null, "commitGraph", withCommitGraph);
+        try (RevWalkContext context = new RevWalkContext(repository)) {
+          assertThat(context.parallelWalk(1)).isNull();
+          ParallelCommitWalk parallelWalk = context.parallelWalk(4);
+          assertThat(parallelWalk).isNotNull();
+
+          for (int i = 0; i < commits.size(); i += 7) {
+            // when
+            long count = parallelWalk.countCommits(commits.get(i));
+
+            // then
+            RevWalk expected = context.countingWalk();
+            assertThat(count).isEqualTo(RevWalkUtils.count(expected, expected.parseCommit(commits.get(i)), null));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds commits on top of random earlier commits, a fifth of them merging two or three earlier commits.
+   */
+  private static void addCommits(Repository repository, List<ObjectId> commits, Random random, int count) throws Exception {
+    try (ObjectInserter inserter = repository.newObjectInserter()) {
+      ObjectId emptyTree = inserter.insert(Constants.OBJ_TREE, new byte[0]);
+      for (int i = 0; i < count; i++) {
+        CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(emptyTree);
+        PersonIdent ident = new PersonIdent("Author", "author@example.com", 1_000_000_000_000L + commits.size() * 1000L, 0);
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage("commit-" + commits.size());
+        if (!commits.isEmpty()) {
+          int parents = random.nextInt(5) == 0 ? 2 + random.nextInt(2) : 1;
+          List<ObjectId> parentIds = new ArrayList<>();
+          parentIds.add(commits.get(commits.size() - 1 - random.nextInt(Math.min(commits.size(), 10))));
+          for (int p = 1; p < parents; p++) {
+            ObjectId parent = commits.get(random.nextInt(commits.size()));
+            if (!parentIds.contains(parent)) {
+              parentIds.add(parent);
+            }
+          }
+          commit.setParentIds(parentIds);
+        }
+        commits.add(inserter.insert(commit));
+      }
+      inserter.flush();
+    }
+    RefUpdate update = repository.updateRef("refs/heads/tip-" + commits.size());
+    update.setNewObjectId(commits.get(commits.size() - 1));
+    update.forceUpdate();
+  }
+}
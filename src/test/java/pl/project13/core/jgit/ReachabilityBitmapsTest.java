@@ -0,0 +1,110 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.RevWalkUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReachabilityBitmapsTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void countCommits_shouldCountLikeAWalk() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      List<RevCommit> commits = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        commits.add(git.commit().setMessage("old-" + i).setAllowEmpty(true).call());
+      }
+      git.branchCreate().setName("feature").call();
+      commits.add(git.commit().setMessage("main").setAllowEmpty(true).call());
+      git.checkout().setName("feature").call();
+      RevCommit feature = git.commit().setMessage("feature").setAllowEmpty(true).call();
+      commits.add(feature);
+      git.checkout().setName("master").call();
+      git.merge().include(feature).setMessage("merge").call();
+      git.gc().call();
+      // commits made since the pack with the bitmaps was written
+      for (int i = 0; i < 3; i++) {
+        commits.add(git.commit().setMessage("new-" + i).setAllowEmpty(true).call());
+      }
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        ReachabilityBitmaps bitmaps = context.getReachabilityBitmaps();
+        assertThat(bitmaps).isNotNull();
+
+        for (RevCommit commit : commits) {
+          // when
+          RevWalk walk = context.countingWalk();
+          int count = bitmaps.countCommits(walk, walk.parseCommit(commit));
+
+          // then
+          RevWalk expected = context.countingWalk();
+          assertThat(count).isEqualTo(RevWalkUtils.count(expected, expected.parseCommit(commit), null));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void reaches_shouldTestTheBitmapOfTheCommit() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).setInitialBranch("master").call()) {
+      // given
+      RevCommit base = git.commit().setMessage("base").setAllowEmpty(true).call();
+      git.branchCreate().setName("feature").call();
+      RevCommit feature = git.commit().setMessage("feature").setAllowEmpty(true).call();
+      git.checkout().setName("feature").call();
+      RevCommit other = git.commit().setMessage("other").setAllowEmpty(true).call();
+      git.checkout().setName("master").call();
+      git.gc().call();
+      RevCommit newer = git.commit().setMessage("newer").setAllowEmpty(true).call();
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        ReachabilityBitmaps bitmaps = context.getReachabilityBitmaps();
+        assertThat(bitmaps).isNotNull();
+
+        // when / then
+        // the tips of the branches get a bitmap
+        assertThat(bitmaps.reaches(feature, base)).isTrue();
+        assertThat(bitmaps.reaches(feature, feature)).isTrue();
+        assertThat(bitmaps.reaches(feature, other)).isFalse();
+        assertThat(bitmaps.reaches(feature, newer)).isFalse();
+        assertThat(bitmaps.reaches(newer, feature)).isNull();
+
+        try (ContainsWalk containsWalk = new ContainsWalk(context, base)) {
+          assertThat(containsWalk.isContainedIn(newer)).isTrue();
+          assertThat(containsWalk.isContainedIn(other)).isTrue();
+        }
+        try (ContainsWalk containsWalk = new ContainsWalk(context, other)) {
+          assertThat(containsWalk.isContainedIn(newer)).isFalse();
+        }
+      }
+    }
+  }
+}
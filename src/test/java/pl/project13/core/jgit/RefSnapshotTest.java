@@ -0,0 +1,86 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RefSnapshotTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void of_shouldClassifyAndPeelTags() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      RevCommit commit = git.commit().setMessage("first").setAllowEmpty(true).call();
+      Ref annotated = git.tag().setName("v1.0").setMessage("v1.0").setAnnotated(true).call();
+      git.tag().setName("lightweight").setAnnotated(false).call();
+      git.branchCreate().setName("feature").call();
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        RefSnapshot snapshot = context.getRefSnapshot();
+
+        // then
+        assertThat(snapshot.getTags()).extracting(RefSnapshot.TagRef::getShortName)
+            .containsExactly("lightweight", "v1.0");
+        RefSnapshot.TagRef lightweightTag = snapshot.getTags().get(0);
+        RefSnapshot.TagRef annotatedTag = snapshot.getTags().get(1);
+        assertThat(lightweightTag.isAnnotated()).isFalse();
+        assertThat(lightweightTag.getPeeledObjectId()).isEqualTo(commit);
+        assertThat(annotatedTag.isAnnotated()).isTrue();
+        assertThat(annotatedTag.getObjectId()).isEqualTo(annotated.getObjectId());
+        assertThat(annotatedTag.getPeeledObjectId()).isEqualTo(commit);
+
+        assertThat(snapshot.getTagsPointingAt(commit)).containsExactly(lightweightTag);
+        assertThat(snapshot.hasTagIgnoreCase("V1.0")).isTrue();
+        assertThat(snapshot.getBranchesPointingAt(commit)).containsExactly("feature", "master");
+        assertThat(context.getRefSnapshot()).isSameAs(snapshot);
+      }
+    }
+  }
+
+  @Test
+  public void of_shouldSkipDanglingTags() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      git.commit().setMessage("first").setAllowEmpty(true).call();
+      git.tag().setName("v1.0").setAnnotated(false).call();
+      Path danglingTag = git.getRepository().getDirectory().toPath().resolve("refs/tags/dangling");
+      Files.write(danglingTag, "0123456789012345678901234567890123456789\n".getBytes(StandardCharsets.US_ASCII));
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        RefSnapshot snapshot = context.getRefSnapshot();
+
+        // then
+        assertThat(snapshot.getTags()).extracting(RefSnapshot.TagRef::getShortName).containsExactly("v1.0");
+      }
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.TreeRevFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.project13.core.log.LogInterface;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class RevWalkContextTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void countingWalk_shouldBeReusedWithoutRetainingBodies() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      RevCommit first = git.commit().setMessage("first").setAllowEmpty(true).call();
+      RevCommit second = git.commit().setMessage("second").setAllowEmpty(true).call();
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        RevWalk walk = context.countingWalk();
+        RevFlag seen = walk.newFlag("seen");
+        walk.markStart(walk.parseCommit(second));
+        for (RevCommit commit : walk) {
+          commit.add(seen);
+        }
+        RevWalk reusedWalk = context.countingWalk();
+
+        // then
+        assertThat(reusedWalk).isSameAs(walk);
+        assertThat(reusedWalk.parseCommit(first).has(seen)).isFalse();
+        assertThat(reusedWalk.parseCommit(second).getRawBuffer()).isNull();
+        assertThat(context.walk().parseCommit(second).getFullMessage()).isEqualTo("second");
+      }
+    }
+  }
+
+  @Test
+  public void findLatestCommitForPath_shouldWalkOncePerRun() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      Files.createDirectories(folder.resolve("module"));
+      Files.write(folder.resolve("module/file.txt"), "content".getBytes(StandardCharsets.UTF_8));
+      git.add().addFilepattern("module/file.txt").call();
+      RevCommit moduleCommit = git.commit().setMessage("module").call();
+      RevCommit head = git.commit().setMessage("unrelated").setAllowEmpty(true).call();
+      JGitCommon jGitCommon = new JGitCommon(mock(LogInterface.class));
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        RevCommit fromHead = jGitCommon.findLatestCommitForPath(context, head, "module");
+        RevCommit fromHeadAgain = jGitCommon.findLatestCommitForPath(context, head, "module");
+        RevCommit fromLatest = jGitCommon.findLatestCommitForPath(context, moduleCommit, "module");
+        RevCommit untouched = jGitCommon.findLatestCommitForPath(context, head, "other");
+
+        // then
+        assertThat(fromHead).isEqualTo(moduleCommit);
+        assertThat(fromHeadAgain).isSameAs(fromHead);
+        assertThat(fromLatest).isSameAs(fromHead);
+        assertThat(untouched).isNull();
+        assertThat(context.getLatestCommitsForPath()).hasSize(3);
+      }
+    }
+  }
+
+  @Test
+  public void walks_shouldReadTheCommitGraphWrittenByGit() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      RevCommit first = git.commit().setMessage("first").setAllowEmpty(true).call();
+      RevCommit second = git.commit().setMessage("second").setAllowEmpty(true).call();
+      StoredConfig config = git.getRepository().getConfig();
+      config.setBoolean("gc", null, "writeCommitGraph", true);
+      config.setBoolean("gc", null, "writeChangedPaths", true);
+      config.setBoolean("core", null, "commitGraph", true);
+      config.save();
+      git.gc().call();
+      // JGit ignores the commit-graph unless asked to, git reads it by default
+      config.unset("core", null, "commitGraph");
+      config.save();
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        RevWalk countingWalk = context.countingWalk();
+        RevCommit fromCountingWalk = countingWalk.parseCommit(second);
+        RevCommit fromWalk = context.walk().parseCommit(second);
+
+        // then
+        assertThat(context.getCommitGraph().getCommitCount()).isEqualTo(2);
+        // only the commits read from the commit-graph come with its changed path filter
+        assertThat(fromCountingWalk.getChangedPathFilter(countingWalk)).isNotNull();
+        assertThat(fromCountingWalk.getParent(0)).isEqualTo(first);
+        assertThat(fromWalk.getFullMessage()).isEqualTo("second");
+      }
+    }
+  }
+
+  @Test
+  public void pathWalk_shouldSkipCommitsByTheChangedPathFilters() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      Files.createDirectories(folder.resolve("module"));
+      for (int i = 0; i < 10; i++) {
+        Path file = folder.resolve(i % 5 == 0 ? "module/file.txt" : "other.txt");
+        Files.write(file, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("commit-" + i).call();
+      }
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        CommitGraphMaintenance.refresh(context, mock(LogInterface.class));
+      }
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository());
+           RevWalk pathWalk = context.pathWalk("module")) {
+        // when
+        TreeRevFilter filter = new TreeRevFilter(pathWalk, pathWalk.getTreeFilter());
+        pathWalk.setTreeFilter(TreeFilter.ALL);
+        pathWalk.setRevFilter(filter);
+        pathWalk.markStart(pathWalk.parseCommit(git.getRepository().resolve("HEAD")));
+        int count = 0;
+        for (RevCommit ignored : pathWalk) {
+          count++;
+        }
+
+        // then
+        assertThat(count).isEqualTo(2);
+        // all commits with a single parent that didn't touch the module
+        assertThat(filter.getChangedPathFilterNegative()).isEqualTo(8);
+      }
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of git-commit-id-plugin-core by Konrad 'ktoso' Malawski <konrad.malawski@java.pl>
+ *
+ * git-commit-id-plugin-core is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * git-commit-id-plugin-core is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with git-commit-id-plugin-core.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pl.project13.core.jgit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.project13.core.log.LogInterface;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class TagIndexTest {
+  @TempDir
+  public Path folder;
+
+  @Test
+  public void nameOf_shouldPreferNewestAnnotatedTag() throws Exception {
+    try (Git git = Git.init().setDirectory(folder.toFile()).call()) {
+      // given
+      LogInterface log = mock(LogInterface.class);
+      RevCommit first = git.commit().setMessage("first").setAllowEmpty(true).call();
+      git.tag().setName("a-lightweight").setAnnotated(false).call();
+      git.tag().setName("v1.0").setMessage("v1.0").setTagger(tagger(1_000_000L)).call();
+      git.tag().setName("v1.0-final").setMessage("v1.0-final").setTagger(tagger(2_000_000L)).call();
+      RevCommit second = git.commit().setMessage("second").setAllowEmpty(true).call();
+      git.tag().setName("b-lightweight").setAnnotated(false).call();
+
+      try (RevWalkContext context = new RevWalkContext(git.getRepository())) {
+        // when
+        TagIndex annotatedOnly = TagIndex.of(context.getRefSnapshot().getTags(), false, Pattern.compile(".*"), log);
+        TagIndex withLightweight = TagIndex.of(context.getRefSnapshot().getTags(), true, Pattern.compile(".*"), log);
+        TagIndex matching = TagIndex.of(context.getRefSnapshot().getTags(), true, Pattern.compile("^refs/tags/v1\\.0$"), log);
+
+        // then
+        assertThat(annotatedOnly.size()).isEqualTo(1);
+        assertThat(annotatedOnly.contains(second)).isFalse();
+        assertThat(annotatedOnly.nameOf(first, context.walk(), log)).isEqualTo("v1.0-final");
+
+        assertThat(withLightweight.size()).isEqualTo(2);
+        assertThat(withLightweight.nameOf(first, context.walk(), log)).isEqualTo("v1.0-final");
+        assertThat(withLightweight.nameOf(second, context.walk(), log)).isEqualTo("b-lightweight");
+
+        assertThat(matching.nameOf(first, context.walk(), log)).isEqualTo("v1.0");
+        assertThat(matching.contains(second)).isFalse();
+      }
+    }
+  }
+
+  private static PersonIdent tagger(long time) {
+    return new PersonIdent("tagger", "tagger@example.com", new Date(time), TimeZone.getTimeZone("UTC"));
+  }
+}